@@ -0,0 +1,276 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary log message index format:
+ *
+ * <pre>
+ * int      magic number ("WLIX")
+ * short    format version
+ * int      number of strings
+ * string[] string table, every string is stored as an int length followed by UTF-8 bytes
+ * int      version (string table index)
+ * int      artifact (string table index)
+ * int      total
+ * int      number of messages
+ * record[] message records with a fixed layout
+ * int      number of suppression entries
+ * int[]    suppressions (string table indexes)
+ * </pre>
+ *
+ * Every message record consists of string table indexes of the project code, signature, return type, interface, level, logging class, value, format
+ * and description, followed by the message id, a flags byte and the offset and count of its suppressions. Missing values are
+ * represented by -1.
+ *
+ * @author Martin Kouba
+ */
+final class BinaryIndex {
+
+    static final String FILE_SUFFIX = ".bin";
+
+    private static final int MAGIC = 0x574C4958;
+
+    private static final short FORMAT_VERSION = 2;
+
+    private static final int FLAG_LOG_MESSAGE = 1;
+
+    private static final int FLAG_HAS_ID = 1 << 1;
+
+    private BinaryIndex() {
+    }
+
+    /**
+     *
+     * @param file
+     * @return <code>true</code> if the given file starts with the binary index magic number
+     * @throws IOException
+     */
+    static boolean isBinaryIndex(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] header = new byte[4];
+            int read = 0;
+            while (read < header.length) {
+                int count = in.read(header, read, header.length - read);
+                if (count < 0) {
+                    return false;
+                }
+                read += count;
+            }
+            return ((header[0] & 0xFF) << 24 | (header[1] & 0xFF) << 16 | (header[2] & 0xFF) << 8 | (header[3] & 0xFF)) == MAGIC;
+        }
+    }
+
+    static void write(Index index, File outputFile) throws IOException {
+        // Build the string table first
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        addString(strings, index.getVersion());
+        addString(strings, index.getArtifact());
+        int suppressionsCount = 0;
+        for (LogMessage message : index.getMessages()) {
+            addString(strings, message.getProjectCode());
+            addString(strings, message.getSignature());
+            addString(strings, message.getReturnType());
+            addString(strings, message.getInterfaceName());
+            addString(strings, message.getLevel());
+            addString(strings, message.getLoggingClass());
+            addString(strings, message.getValue());
+            addString(strings, message.getFormat());
+            addString(strings, message.getDescription());
+            if (message.getSuppressions() != null) {
+                for (String suppression : message.getSuppressions()) {
+                    addString(strings, suppression);
+                }
+                suppressionsCount += message.getSuppressions().size();
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(outputFile.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeInt(strings.size());
+            for (String string : strings.keySet()) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(strings.get(index.getVersion()));
+            out.writeInt(strings.get(index.getArtifact()));
+            out.writeInt(index.getTotal());
+            out.writeInt(index.getMessages().size());
+            int suppressionsOffset = 0;
+            for (LogMessage message : index.getMessages()) {
+                out.writeInt(indexOf(strings, message.getProjectCode()));
+                out.writeInt(indexOf(strings, message.getSignature()));
+                out.writeInt(indexOf(strings, message.getReturnType()));
+                out.writeInt(indexOf(strings, message.getInterfaceName()));
+                out.writeInt(indexOf(strings, message.getLevel()));
+                out.writeInt(indexOf(strings, message.getLoggingClass()));
+                out.writeInt(indexOf(strings, message.getValue()));
+                out.writeInt(indexOf(strings, message.getFormat()));
+                out.writeInt(indexOf(strings, message.getDescription()));
+                out.writeInt(message.getId());
+                out.writeByte((message.isLogMessage() ? FLAG_LOG_MESSAGE : 0) | (message.hasId() ? FLAG_HAS_ID : 0));
+                if (message.getSuppressions() != null) {
+                    out.writeInt(suppressionsOffset);
+                    out.writeInt(message.getSuppressions().size());
+                    suppressionsOffset += message.getSuppressions().size();
+                } else {
+                    out.writeInt(0);
+                    out.writeInt(-1);
+                }
+            }
+            out.writeInt(suppressionsCount);
+            for (LogMessage message : index.getMessages()) {
+                if (message.getSuppressions() != null) {
+                    for (String suppression : message.getSuppressions()) {
+                        out.writeInt(strings.get(suppression));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The string table is skipped except for the version and the artifact, which are always stored first.
+     *
+     * @param inputFile
+     * @return the index without messages
+     * @throws IOException
+     */
+    static Index readMetadata(File inputFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(inputFile.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalStateException("Not a binary index file: " + inputFile);
+            }
+            short formatVersion = in.readShort();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IllegalStateException("Unsupported binary index format version " + formatVersion + ": " + inputFile);
+            }
+            int count = in.readInt();
+            String[] strings = new String[Math.min(count, 2)];
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (i < strings.length) {
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    strings[i] = new String(bytes, StandardCharsets.UTF_8);
+                } else if (in.skipBytes(length) != length) {
+                    throw new EOFException("Unexpected end of the binary index file: " + inputFile);
+                }
+            }
+            String version = strings[in.readInt()];
+            String artifact = strings[in.readInt()];
+            return new Index(version, artifact, in.readInt(), inputFile.toPath().toString(), Collections.<LogMessage> emptyList());
+        }
+    }
+
+    static Index read(File inputFile) throws IOException {
+        return read(inputFile, new StringPool());
+    }
+
+    /**
+     *
+     * @param inputFile
+     * @param pool the pool used for all the string values
+     * @return the index read from the given file
+     * @throws IOException
+     */
+    static Index read(File inputFile, StringPool pool) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(inputFile.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalStateException("Not a binary index file: " + inputFile);
+            }
+            short formatVersion = in.readShort();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IllegalStateException("Unsupported binary index format version " + formatVersion + ": " + inputFile);
+            }
+            String[] strings = new String[in.readInt()];
+            byte[] buffer = new byte[256];
+            for (int i = 0; i < strings.length; i++) {
+                int length = in.readInt();
+                if (buffer.length < length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+                in.readFully(buffer, 0, length);
+                strings[i] = pool.intern(new String(buffer, 0, length, StandardCharsets.UTF_8));
+            }
+            String version = strings[in.readInt()];
+            String artifact = strings[in.readInt()];
+            int total = in.readInt();
+            int count = in.readInt();
+            // Read the fixed-layout records first, suppressions are stored after the records
+            String[][] values = new String[count][];
+            int[] ids = new int[count];
+            byte[] flags = new byte[count];
+            int[] suppressionOffsets = new int[count];
+            int[] suppressionCounts = new int[count];
+            for (int i = 0; i < count; i++) {
+                String[] messageValues = new String[9];
+                for (int j = 0; j < messageValues.length; j++) {
+                    int stringIdx = in.readInt();
+                    messageValues[j] = stringIdx < 0 ? null : strings[stringIdx];
+                }
+                values[i] = messageValues;
+                ids[i] = in.readInt();
+                flags[i] = in.readByte();
+                suppressionOffsets[i] = in.readInt();
+                suppressionCounts[i] = in.readInt();
+            }
+            String[] suppressions = new String[in.readInt()];
+            for (int i = 0; i < suppressions.length; i++) {
+                suppressions[i] = strings[in.readInt()];
+            }
+            List<LogMessage> messages = new ArrayList<LogMessage>(count);
+            for (int i = 0; i < count; i++) {
+                String[] v = values[i];
+                List<String> messageSuppressions = suppressionCounts[i] < 0 ? null
+                        : Arrays.asList(Arrays.copyOfRange(suppressions, suppressionOffsets[i], suppressionOffsets[i] + suppressionCounts[i]));
+                messages.add(new LogMessage(v[0], v[1], v[2], v[3], (flags[i] & FLAG_LOG_MESSAGE) != 0, v[4], v[5], (flags[i] & FLAG_HAS_ID) != 0 ? ids[i] : null,
+                        v[6], v[7], messageSuppressions, v[8]));
+            }
+            return new Index(version, artifact, total, inputFile.toPath().toString(), messages);
+        }
+    }
+
+    private static void addString(Map<String, Integer> strings, String value) {
+        if (value != null && !strings.containsKey(value)) {
+            strings.put(value, strings.size());
+        }
+    }
+
+    private static int indexOf(Map<String, Integer> strings, String value) {
+        return value != null ? strings.get(value) : -1;
+    }
+
+}
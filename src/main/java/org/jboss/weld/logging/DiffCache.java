@@ -0,0 +1,453 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * An on-disk cache of diff results. The key is the SHA-256 hash of the paths and contents of the index files, the <code>detectCollisionsOnly</code> flag,
+ * {@link #FORMAT_VERSION} and the version of the tools code. Modified index files result in a different key, i.e. a stale entry is never returned.
+ *
+ * <p>
+ * The version of the code is the SHA-256 hash of the JAR file or the class files the tools are loaded from, so that a result cached by a different build
+ * is never returned, even if the implementation version is not set or not changed (e.g. for snapshots). If the code cannot be read, the implementation
+ * version is used instead. If neither is available, the cache is not supported, see also {@link #isSupported()}.
+ * </p>
+ *
+ * <p>
+ * Every entry is a single file with the JSON diff followed by the SHA-256 checksum of the JSON. New entries are written to a temporary file first and
+ * atomically moved, a corrupted or incomplete entry is deleted. The least recently used entries are evicted if the total size of the entries exceeds
+ * the maximum size - the last modified time of the entry is updated on every hit.
+ * </p>
+ *
+ * @author Martin Kouba
+ */
+final class DiffCache {
+
+    static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    // Must be incremented whenever the diff format or the comparison rules change, i.e. whenever the same index files may result in a different diff
+    private static final int FORMAT_VERSION = 3;
+
+    // Null if unknown
+    private static final String CODE_VERSION = initCodeVersion();
+
+    private static final String ENTRY_SUFFIX = ".json";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // The hex checksum and the separator
+    private static final int TRAILER_LENGTH = 65;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long STALE_TEMP_FILE_AGE = TimeUnit.DAYS.toMillis(1);
+
+    private final Path directory;
+
+    private final long maxSize;
+
+    /**
+     *
+     * @return <code>true</code> if the version of the tools code is known, i.e. the cached results can be safely reused
+     */
+    static boolean isSupported() {
+        return CODE_VERSION != null;
+    }
+
+    /**
+     *
+     * @param directory
+     * @param maxSize the maximum total size of the entries in bytes
+     */
+    DiffCache(File directory, long maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum cache size must be greater than zero: " + maxSize);
+        }
+        this.directory = directory.toPath();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * The order of index files does not matter.
+     *
+     * @param indexFiles
+     * @param detectCollisionsOnly
+     * @return the key for the given index files
+     * @throws IOException
+     */
+    String getKey(List<File> indexFiles, boolean detectCollisionsOnly) throws IOException {
+        List<String> files = new ArrayList<String>();
+        for (File indexFile : indexFiles) {
+            files.add(indexFile.toPath().toString() + '\u0000' + toHex(digest(indexFile.toPath())));
+        }
+        Collections.sort(files);
+        if (CODE_VERSION == null) {
+            throw new IllegalStateException("The version of the code is unknown, the cache is not supported");
+        }
+        MessageDigest digest = newDigest();
+        update(digest, FORMAT_VERSION + ":" + CODE_VERSION + ":" + detectCollisionsOnly);
+        for (String file : files) {
+            update(digest, file);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Writes the cached diff to the given writer.
+     *
+     * @param key
+     * @param writer
+     * @return <code>true</code> if the entry was found and written, <code>false</code> otherwise
+     * @throws IOException
+     */
+    boolean read(String key, JsonWriter writer) throws IOException {
+        Path entry = getEntry(key);
+        try {
+            if (verify(entry) < 0) {
+                return false;
+            }
+            try (JsonReader reader = new JsonReader(new InputStreamReader(new BufferedInputStream(Files.newInputStream(entry)), StandardCharsets.UTF_8))) {
+                Json.copyJsonValue(reader, writer);
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            // Not found or evicted concurrently
+            return false;
+        }
+    }
+
+    /**
+     * Copies the cached diff to the given file. Unlike {@link #read(String, JsonWriter)} the JSON is not parsed.
+     *
+     * @param key
+     * @param outputFile
+     * @return <code>true</code> if the entry was found and copied, <code>false</code> otherwise
+     * @throws IOException
+     */
+    boolean read(String key, File outputFile) throws IOException {
+        Path entry = getEntry(key);
+        try {
+            long length = verify(entry);
+            if (length < 0) {
+                return false;
+            }
+            try (InputStream in = Files.newInputStream(entry); OutputStream out = new BufferedOutputStream(Files.newOutputStream(outputFile.toPath()))) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long remaining = length;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of the cache entry: " + entry);
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stores a new entry and evicts the least recently used entries if needed. The new entry itself is never evicted, even if it exceeds the maximum
+     * size.
+     *
+     * @param key
+     * @param content
+     * @throws IOException
+     */
+    void write(String key, Content content) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+        try {
+            MessageDigest digest = newDigest();
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                DigestOutputStream digestOut = new DigestOutputStream(out, digest);
+                JsonWriter writer = new JsonWriter(new OutputStreamWriter(digestOut, StandardCharsets.UTF_8));
+                writer.setHtmlSafe(true);
+                content.write(writer);
+                writer.flush();
+                out.write(('\n' + toHex(digest.digest())).getBytes(StandardCharsets.US_ASCII));
+            }
+            Files.move(temp, getEntry(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        evict(getEntry(key));
+    }
+
+    /**
+     *
+     * @param key
+     * @throws IOException
+     */
+    void remove(String key) throws IOException {
+        Files.deleteIfExists(getEntry(key));
+    }
+
+    /**
+     *
+     * @return the number of entries
+     * @throws IOException
+     */
+    int size() throws IOException {
+        return getEntries().size();
+    }
+
+    private void evict(Path retained) throws IOException {
+        List<Path> entries = getEntries();
+        final List<FileTime> times = new ArrayList<FileTime>();
+        long total = 0;
+        for (Path entry : entries) {
+            try {
+                total += Files.size(entry);
+            } catch (NoSuchFileException ignored) {
+                // Removed concurrently
+            }
+        }
+        if (total <= maxSize) {
+            return;
+        }
+        for (Path entry : entries) {
+            times.add(getLastModifiedTime(entry));
+        }
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < entries.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return times.get(o1).compareTo(times.get(o2));
+            }
+        });
+        for (Integer idx : order) {
+            if (total <= maxSize) {
+                break;
+            }
+            Path entry = entries.get(idx);
+            if (entry.equals(retained)) {
+                continue;
+            }
+            try {
+                long size = Files.size(entry);
+                Files.delete(entry);
+                total -= size;
+            } catch (NoSuchFileException ignored) {
+                // Removed concurrently
+            }
+        }
+    }
+
+    /**
+     * Verifies the checksum of the given entry, a corrupted entry is deleted. The last modified time of a valid entry is updated.
+     *
+     * @param entry
+     * @return the length of the JSON diff, or <code>-1</code> if the entry is corrupted
+     * @throws IOException
+     */
+    private long verify(Path entry) throws IOException {
+        long length = Files.size(entry) - TRAILER_LENGTH;
+        if (length < 0) {
+            Files.deleteIfExists(entry);
+            return -1;
+        }
+        MessageDigest digest = newDigest();
+        byte[] trailer = new byte[TRAILER_LENGTH];
+        try (InputStream in = Files.newInputStream(entry)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    // Truncated concurrently
+                    return -1;
+                }
+                digest.update(buffer, 0, read);
+                remaining -= read;
+            }
+            if (!readFully(in, trailer)) {
+                return -1;
+            }
+        }
+        if (!new String(trailer, 1, TRAILER_LENGTH - 1, StandardCharsets.US_ASCII).equals(toHex(digest.digest()))) {
+            Files.deleteIfExists(entry);
+            return -1;
+        }
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        return length;
+    }
+
+    /**
+     * Stale temporary files, e.g. left by a process which was killed, are deleted.
+     *
+     * @return the list of entries
+     * @throws IOException
+     */
+    private List<Path> getEntries() throws IOException {
+        List<Path> entries = new ArrayList<Path>();
+        if (!Files.isDirectory(directory)) {
+            return entries;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(ENTRY_SUFFIX)) {
+                    entries.add(path);
+                } else if (name.endsWith(TEMP_SUFFIX) && getLastModifiedTime(path).toMillis() < System.currentTimeMillis() - STALE_TEMP_FILE_AGE) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private Path getEntry(String key) {
+        return directory.resolve(key + ENTRY_SUFFIX);
+    }
+
+    private static FileTime getLastModifiedTime(Path path) throws IOException {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (NoSuchFileException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String initCodeVersion() {
+        try {
+            CodeSource codeSource = DiffCache.class.getProtectionDomain().getCodeSource();
+            if (codeSource != null && codeSource.getLocation() != null) {
+                Path location = Paths.get(codeSource.getLocation().toURI());
+                if (Files.isRegularFile(location)) {
+                    return toHex(digest(location));
+                }
+                Path packageDirectory = location.resolve(DiffCache.class.getPackage().getName().replace('.', '/'));
+                if (Files.isDirectory(packageDirectory)) {
+                    return toHex(digestClassFiles(packageDirectory));
+                }
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            // Fall back to the implementation version
+        }
+        return LogMessageIndexDiff.class.getPackage().getImplementationVersion();
+    }
+
+    private static byte[] digestClassFiles(Path directory) throws IOException {
+        List<Path> classFiles = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.class")) {
+            for (Path classFile : stream) {
+                classFiles.add(classFile);
+            }
+        }
+        Collections.sort(classFiles);
+        MessageDigest digest = newDigest();
+        for (Path classFile : classFiles) {
+            update(digest, classFile.getFileName().toString());
+            digest.update(digest(classFile));
+        }
+        return digest.digest();
+    }
+
+    private static byte[] digest(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static boolean readFully(InputStream in, byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0) {
+                return false;
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(new byte[] { (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length });
+        digest.update(bytes);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every implementation of the Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the content of a new entry.
+     */
+    interface Content {
+
+        void write(JsonWriter writer) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import static org.jboss.weld.logging.Strings.COLLISIONS;
+import static org.jboss.weld.logging.Strings.ID;
+import static org.jboss.weld.logging.Strings.MESSAGES;
+import static org.jboss.weld.logging.Strings.PROJECT_CODE;
+import static org.jboss.weld.logging.Strings.VALUE;
+import static org.jboss.weld.logging.Strings.VERSION;
+import static org.jboss.weld.logging.Strings.VERSIONS;
+import static org.jboss.weld.logging.Strings.VERSION_COLLISIONS;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A difference or a collision found for a single ID. The messages are not copied - they're written directly from the {@link MessageTable}.
+ *
+ * @author Martin Kouba
+ */
+final class Difference {
+
+    private final MessageTable table;
+
+    private final int idx;
+
+    // Null if not detecting collisions
+    private final Set<String> collisions;
+
+    private final List<int[]> versionPairs;
+
+    private final List<Set<String>> versionCollisions;
+
+    private Difference(MessageTable table, int idx, Set<String> collisions, List<int[]> versionPairs, List<Set<String>> versionCollisions) {
+        this.table = table;
+        this.idx = idx;
+        this.collisions = collisions;
+        this.versionPairs = versionPairs;
+        this.versionCollisions = versionCollisions;
+    }
+
+    /**
+     *
+     * @param table
+     * @param idx
+     * @return a new difference for the ID at the given position
+     */
+    static Difference of(MessageTable table, int idx) {
+        return new Difference(table, idx, null, null, null);
+    }
+
+    /**
+     * The collisions are added with {@link #addVersionCollisions(int, int, Set)}.
+     *
+     * @param table
+     * @param idx
+     * @return a new collision for the ID at the given position
+     */
+    static Difference collision(MessageTable table, int idx) {
+        return new Difference(table, idx, new TreeSet<String>(), new ArrayList<int[]>(), new ArrayList<Set<String>>());
+    }
+
+    MessageTable getTable() {
+        return table;
+    }
+
+    int getIdx() {
+        return idx;
+    }
+
+    String getProjectCode() {
+        return table.getProjectCode();
+    }
+
+    int getId() {
+        return table.getId(idx);
+    }
+
+    /**
+     *
+     * @return the sorted collision paths or <code>null</code> if not detecting collisions
+     */
+    Set<String> getCollisions() {
+        return collisions;
+    }
+
+    /**
+     *
+     * @param previous
+     * @param current
+     * @param pairCollisions
+     */
+    void addVersionCollisions(int previous, int current, Set<String> pairCollisions) {
+        collisions.addAll(pairCollisions);
+        versionPairs.add(new int[] { previous, current });
+        versionCollisions.add(new TreeSet<>(pairCollisions));
+    }
+
+    /**
+     * Writes the JSON representation of this difference.
+     *
+     * @param writer
+     * @param versions
+     * @param descriptions the descriptions which were not retained
+     * @throws IOException
+     */
+    void write(JsonWriter writer, List<String> versions, Map<LogMessage, String> descriptions) throws IOException {
+        writer.beginObject();
+        writer.name(PROJECT_CODE).value(table.getProjectCode());
+        writer.name(ID).value(table.getId(idx));
+        writer.name(MESSAGES).beginArray();
+        for (int version = 0; version < table.getVersionCount(); version++) {
+            for (int i = table.getStart(idx, version); i < table.getEnd(idx, version); i++) {
+                writer.beginObject();
+                writer.name(VERSION).value(versions.get(version));
+                writer.name(VALUE);
+                LogMessage message = table.getMessage(i);
+                message.write(writer, descriptions.get(message));
+                writer.endObject();
+            }
+        }
+        writer.endArray();
+        if (collisions != null) {
+            writer.name(COLLISIONS);
+            writeStrings(writer, collisions);
+            writer.name(VERSION_COLLISIONS).beginArray();
+            for (int i = 0; i < versionPairs.size(); i++) {
+                writer.beginObject();
+                writer.name(VERSIONS).beginArray();
+                writer.value(versions.get(versionPairs.get(i)[0]));
+                writer.value(versions.get(versionPairs.get(i)[1]));
+                writer.endArray();
+                writer.name(COLLISIONS);
+                writeStrings(writer, versionCollisions.get(i));
+                writer.endObject();
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    private static void writeStrings(JsonWriter writer, Collection<String> values) throws IOException {
+        writer.beginArray();
+        for (String value : values) {
+            writer.value(value);
+        }
+        writer.endArray();
+    }
+
+}
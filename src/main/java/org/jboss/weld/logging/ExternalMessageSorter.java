@@ -0,0 +1,363 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts messages by project code and ID within a bounded amount of memory. The buffered messages are sorted and spilled to a run file on local
+ * disk whenever the estimated size of the buffer exceeds the budget. The runs are then k-way merged and the messages are returned group by group,
+ * see also {@link #nextGroup()}. If all the messages fit in the buffer, nothing is written to the disk.
+ *
+ * @author Martin Kouba
+ */
+final class ExternalMessageSorter implements Closeable {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private static final int MAX_FAN_IN = 64;
+
+    private static final Comparator<Entry> ENTRY_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            int result = compareGroups(o1, o2);
+            if (result == 0) {
+                result = Integer.compare(o1.index, o2.index);
+            }
+            return result == 0 ? Integer.compare(o1.position, o2.position) : result;
+        }
+    };
+
+    private static final Comparator<RunReader> READER_COMPARATOR = new Comparator<RunReader>() {
+        @Override
+        public int compare(RunReader o1, RunReader o2) {
+            return ENTRY_COMPARATOR.compare(o1.current, o2.current);
+        }
+    };
+
+    private final long bufferLimit;
+
+    private final int fanIn;
+
+    private final List<Entry> buffer;
+
+    private long bufferSize;
+
+    private final List<File> runs;
+
+    private File directory;
+
+    // Sorted buffer if nothing was spilled
+    private int bufferPosition = -1;
+
+    private PriorityQueue<RunReader> readers;
+
+    private final List<RunReader> openReaders;
+
+    /**
+     * Half of the budget is used for the buffer, the other half for the read buffers when merging the runs.
+     *
+     * @param memoryBudget the approximate maximum number of bytes used, in bytes
+     */
+    ExternalMessageSorter(long memoryBudget) {
+        this.bufferLimit = memoryBudget / 2;
+        this.fanIn = (int) Math.max(2, Math.min(MAX_FAN_IN, memoryBudget / 2 / READ_BUFFER_SIZE));
+        this.buffer = new ArrayList<Entry>();
+        this.runs = new ArrayList<File>();
+        this.openReaders = new ArrayList<RunReader>();
+    }
+
+    /**
+     *
+     * @param message
+     * @param index the number of the index the message comes from
+     * @param position the position of the message in the index
+     * @throws IOException
+     */
+    void add(LogMessage message, int index, int position) throws IOException {
+        if (bufferPosition != -1 || readers != null) {
+            throw new IllegalStateException("Messages cannot be added after the merge started");
+        }
+        buffer.add(new Entry(message, index, position));
+        bufferSize += estimateSize(message);
+        if (bufferSize >= bufferLimit) {
+            spill();
+        }
+    }
+
+    /**
+     * The entries of a group are sorted by index and position.
+     *
+     * @return the next group of entries with the same project code and ID, or <code>null</code> if there are no more entries
+     * @throws IOException
+     */
+    List<Entry> nextGroup() throws IOException {
+        if (bufferPosition == -1 && readers == null) {
+            startMerge();
+        }
+        List<Entry> group = new ArrayList<Entry>();
+        if (readers == null) {
+            // Nothing was spilled
+            while (bufferPosition < buffer.size() && (group.isEmpty() || compareGroups(group.get(0), buffer.get(bufferPosition)) == 0)) {
+                group.add(buffer.get(bufferPosition));
+                // Release the entry
+                buffer.set(bufferPosition++, null);
+            }
+        } else {
+            while (!readers.isEmpty() && (group.isEmpty() || compareGroups(group.get(0), readers.peek().current) == 0)) {
+                RunReader reader = readers.poll();
+                group.add(reader.current);
+                if (reader.next()) {
+                    readers.add(reader);
+                }
+            }
+        }
+        return group.isEmpty() ? null : group;
+    }
+
+    /**
+     *
+     * @return the number of run files written
+     */
+    int getRunCount() {
+        return runs.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (RunReader reader : openReaders) {
+            reader.close();
+        }
+        if (directory != null) {
+            for (File run : runs) {
+                Files.deleteIfExists(run.toPath());
+            }
+            Files.deleteIfExists(directory.toPath());
+        }
+    }
+
+    private void startMerge() throws IOException {
+        if (runs.isEmpty()) {
+            Collections.sort(buffer, ENTRY_COMPARATOR);
+            bufferPosition = 0;
+            return;
+        }
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+        // Merge the runs in several passes if there are too many of them
+        int first = 0;
+        while (runs.size() - first > fanIn) {
+            int last = Math.min(first + fanIn, runs.size());
+            List<RunReader> pass = new ArrayList<RunReader>();
+            long count = 0;
+            for (int i = first; i < last; i++) {
+                RunReader reader = openReader(runs.get(i));
+                count += reader.remaining + 1;
+                pass.add(reader);
+            }
+            PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(pass.size(), READER_COMPARATOR);
+            queue.addAll(pass);
+            try (DataOutputStream out = openRun(count)) {
+                while (!queue.isEmpty()) {
+                    RunReader reader = queue.poll();
+                    write(out, reader.current);
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+            }
+            for (int i = first; i < last; i++) {
+                Files.delete(runs.get(i).toPath());
+            }
+            first = last;
+        }
+        readers = new PriorityQueue<RunReader>(runs.size() - first, READER_COMPARATOR);
+        for (int i = first; i < runs.size(); i++) {
+            readers.add(openReader(runs.get(i)));
+        }
+    }
+
+    private void spill() throws IOException {
+        Collections.sort(buffer, ENTRY_COMPARATOR);
+        try (DataOutputStream out = openRun(buffer.size())) {
+            for (Entry entry : buffer) {
+                write(out, entry);
+            }
+        }
+        buffer.clear();
+        bufferSize = 0;
+    }
+
+    private DataOutputStream openRun(long count) throws IOException {
+        if (directory == null) {
+            directory = Files.createTempDirectory("weld-logging-diff").toFile();
+        }
+        File run = new File(directory, "run-" + runs.size());
+        runs.add(run);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run.toPath())));
+        out.writeLong(count);
+        return out;
+    }
+
+    private RunReader openReader(File run) throws IOException {
+        RunReader reader = new RunReader(new DataInputStream(new BufferedInputStream(Files.newInputStream(run.toPath()), READ_BUFFER_SIZE)));
+        openReaders.add(reader);
+        // Empty runs are never written
+        reader.next();
+        return reader;
+    }
+
+    private static void write(DataOutputStream out, Entry entry) throws IOException {
+        out.writeInt(entry.index);
+        out.writeInt(entry.position);
+        entry.message.write(out);
+    }
+
+    private static Entry read(DataInputStream in) throws IOException {
+        int index = in.readInt();
+        int position = in.readInt();
+        return new Entry(LogMessage.read(in), index, position);
+    }
+
+    private static int compareGroups(Entry o1, Entry o2) {
+        String projectCode1 = o1.message.getProjectCode();
+        String projectCode2 = o2.message.getProjectCode();
+        if (projectCode1 != projectCode2) {
+            if (projectCode1 == null) {
+                return -1;
+            }
+            if (projectCode2 == null) {
+                return 1;
+            }
+            int result = projectCode1.compareTo(projectCode2);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(o1.message.getId(), o2.message.getId());
+    }
+
+    /**
+     * A rough estimate of the heap occupied by the given message.
+     *
+     * @param message
+     * @return the estimated size in bytes
+     */
+    private static long estimateSize(LogMessage message) {
+        long size = 128;
+        size += estimateSize(message.getProjectCode());
+        size += estimateSize(message.getSignature());
+        size += estimateSize(message.getReturnType());
+        size += estimateSize(message.getInterfaceName());
+        size += estimateSize(message.getLevel());
+        size += estimateSize(message.getLoggingClass());
+        size += estimateSize(message.getValue());
+        size += estimateSize(message.getFormat());
+        size += estimateSize(message.getDescription());
+        if (message.getSuppressions() != null) {
+            for (String suppression : message.getSuppressions()) {
+                size += estimateSize(suppression) + 8;
+            }
+        }
+        return size;
+    }
+
+    private static long estimateSize(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    /**
+     * A message with its origin.
+     */
+    static final class Entry {
+
+        private final LogMessage message;
+
+        private final int index;
+
+        private final int position;
+
+        Entry(LogMessage message, int index, int position) {
+            this.message = message;
+            this.index = index;
+            this.position = position;
+        }
+
+        LogMessage getMessage() {
+            return message;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        int getPosition() {
+            return position;
+        }
+
+    }
+
+    private static final class RunReader implements Closeable {
+
+        private final DataInputStream in;
+
+        private long remaining;
+
+        private Entry current;
+
+        RunReader(DataInputStream in) throws IOException {
+            this.in = in;
+            this.remaining = in.readLong();
+        }
+
+        /**
+         *
+         * @return <code>true</code> if the next entry was read, <code>false</code> if there are no more entries
+         * @throws IOException
+         */
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                current = null;
+                in.close();
+                return false;
+            }
+            current = read(in);
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,527 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent history of log messages. Every (project code, ID) has its own timeline of states - a new state is only recorded if the messages with
+ * the ID change. The state holds all the messages with the ID in the given version, an empty state means the ID was removed.
+ *
+ * <p>
+ * The store is a single append-only log file in the store directory. Every appended version is written as a batch of records followed by a CRC32
+ * checksum, an incomplete batch (e.g. after a crash) is discarded when the store is opened. Opening the store replays the log, i.e. it takes time
+ * proportional to the number of changes recorded, not to the number of versions.
+ * </p>
+ *
+ * <p>
+ * The log file is locked while it is replayed and while a version is appended. The batches appended by other processes since the store was opened
+ * are replayed before the new states are built, so that several processes may append to the same store.
+ * </p>
+ *
+ * @author Martin Kouba
+ */
+final class HistoryStore {
+
+    static final String LOG_FILE_NAME = "history.log";
+
+    private static final int MAGIC = 0x574C4853;
+
+    private static final short FORMAT_VERSION = 2;
+
+    private static final int HEADER_LENGTH = 6;
+
+    private static final byte RECORD_INDEX = 1;
+
+    private static final byte RECORD_STATE = 2;
+
+    /**
+     * Compares the versions component by component, e.g. <code>2.4.9.Final</code> is older than <code>2.4.10.Final</code>. The components are
+     * separated by a dot, a hyphen or an underscore. Numeric components are compared numerically, other components lexicographically and a numeric
+     * component is older than a non-numeric one.
+     */
+    static final Comparator<String> VERSION_COMPARATOR = new Comparator<String>() {
+        @Override
+        public int compare(String o1, String o2) {
+            String[] components1 = o1.split("[.\\-_]");
+            String[] components2 = o2.split("[.\\-_]");
+            for (int i = 0; i < Math.min(components1.length, components2.length); i++) {
+                int result = compareComponents(components1[i], components2[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            int result = Integer.compare(components1.length, components2.length);
+            return result == 0 ? o1.compareTo(o2) : result;
+        }
+    };
+
+    private final File logFile;
+
+    // Sorted by version and artifact
+    private final List<Index> indexes;
+
+    private final List<String> versions;
+
+    // Project code -> ID -> timeline
+    private final Map<String, Map<Integer, Timeline>> timelines;
+
+    // The length of the part of the log file which was replayed
+    private long length;
+
+    private HistoryStore(File logFile) {
+        this.logFile = logFile;
+        this.indexes = new ArrayList<Index>();
+        this.versions = new ArrayList<String>();
+        this.timelines = new TreeMap<String, Map<Integer, Timeline>>();
+    }
+
+    /**
+     * Opens the store in the given directory. The directory and the log file are created if needed.
+     *
+     * @param directory
+     * @return the store
+     * @throws IOException
+     */
+    static HistoryStore open(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        HistoryStore store = new HistoryStore(new File(directory, LOG_FILE_NAME));
+        try (FileChannel channel = store.openChannel()) {
+            FileLock lock = channel.lock();
+            try {
+                store.replay(channel);
+            } finally {
+                lock.release();
+            }
+        }
+        return store;
+    }
+
+    /**
+     *
+     * @return the metadata of the recorded indexes, sorted by version and artifact
+     */
+    List<Index> getIndexes() {
+        return Collections.unmodifiableList(indexes);
+    }
+
+    /**
+     *
+     * @return the recorded versions in the order in which they were appended
+     */
+    List<String> getVersions() {
+        return Collections.unmodifiableList(versions);
+    }
+
+    /**
+     *
+     * @return all the timelines ordered by project code and ID
+     */
+    List<Timeline> getTimelines() {
+        List<Timeline> result = new ArrayList<Timeline>();
+        for (Map<Integer, Timeline> projectTimelines : timelines.values()) {
+            result.addAll(projectTimelines.values());
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @param projectCode
+     * @param id
+     * @return the timeline or <code>null</code> if the ID was never recorded
+     */
+    Timeline getTimeline(String projectCode, int id) {
+        Map<Integer, Timeline> projectTimelines = timelines.get(projectCode);
+        return projectTimelines != null ? projectTimelines.get(id) : null;
+    }
+
+    /**
+     * Appends a new version. The log file is locked, the batches appended by other processes are replayed and then the states of the new version are
+     * built by the given builder. The states are only written for the IDs whose messages changed.
+     *
+     * @param versionIndexes the metadata of all the indexes of the new version, the messages are not stored
+     * @param builder
+     * @throws IOException
+     */
+    void append(List<Index> versionIndexes, StateBuilder builder) throws IOException {
+        String version = versionIndexes.get(0).getVersion();
+        for (Index index : versionIndexes) {
+            if (!index.getVersion().equals(version)) {
+                throw new IllegalArgumentException("All the indexes must have the same version: " + index.getVersion());
+            }
+        }
+        try (FileChannel channel = openChannel()) {
+            FileLock lock = channel.lock();
+            try {
+                replay(channel);
+                if (!versions.isEmpty() && VERSION_COMPARATOR.compare(version, versions.get(versions.size() - 1)) <= 0) {
+                    throw new IllegalStateException("Only a version newer than " + versions.get(versions.size() - 1) + " may be appended: " + version);
+                }
+                int slot = versions.size();
+                List<State> states = builder.build(slot);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                for (Index index : versionIndexes) {
+                    out.writeByte(RECORD_INDEX);
+                    out.writeUTF(index.getVersion());
+                    out.writeUTF(index.getArtifact());
+                    out.writeInt(index.getTotal());
+                    out.writeUTF(index.getFilePath());
+                }
+                for (State state : states) {
+                    if (state.slot != slot) {
+                        throw new IllegalArgumentException("Invalid version slot: " + state.slot);
+                    }
+                    out.writeByte(RECORD_STATE);
+                    state.write(out);
+                }
+                out.flush();
+                CRC32 crc = new CRC32();
+                crc.update(bytes.toByteArray());
+
+                ByteBuffer buffer = ByteBuffer.allocate(4 + bytes.size() + 8);
+                buffer.putInt(bytes.size());
+                buffer.put(bytes.toByteArray());
+                buffer.putLong(crc.getValue());
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, length + buffer.position());
+                }
+                channel.force(true);
+                length += buffer.limit();
+
+                for (Index index : versionIndexes) {
+                    addIndex(new Index(index.getVersion(), index.getArtifact(), index.getTotal(), index.getFilePath(), Collections.<LogMessage> emptyList()));
+                }
+                for (State state : states) {
+                    addState(state);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        return FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Replays the batches which were not replayed yet. The caller must hold the lock of the log file.
+     *
+     * @param channel
+     * @throws IOException
+     */
+    private void replay(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (length == 0) {
+            if (size == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+                header.putInt(MAGIC);
+                header.putShort(FORMAT_VERSION);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                length = HEADER_LENGTH;
+                return;
+            }
+            if (size < HEADER_LENGTH) {
+                throw new IllegalStateException("Not a history store: " + logFile);
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining()) {
+                channel.read(header, header.position());
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IllegalStateException("Not a history store: " + logFile);
+            }
+            short formatVersion = header.getShort();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IllegalStateException("Unsupported history store format version " + formatVersion + ": " + logFile);
+            }
+            length = HEADER_LENGTH;
+        }
+        // Do not close the stream - it would close the channel
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(length))));
+        while (true) {
+            byte[] batch;
+            long checksum;
+            try {
+                int batchLength = in.readInt();
+                if (batchLength < 0 || batchLength > size - length) {
+                    break;
+                }
+                batch = new byte[batchLength];
+                in.readFully(batch);
+                checksum = in.readLong();
+            } catch (EOFException e) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(batch);
+            if (crc.getValue() != checksum) {
+                break;
+            }
+            readBatch(batch);
+            length += 4 + batch.length + 8;
+        }
+        if (length < size) {
+            // Discard the incomplete batch
+            channel.truncate(length);
+        }
+    }
+
+    private static int compareComponents(String component1, String component2) {
+        boolean numeric1 = component1.matches("\\d+");
+        boolean numeric2 = component2.matches("\\d+");
+        if (numeric1 && numeric2) {
+            // Ignore leading zeros, the components may exceed the range of long
+            String number1 = component1.replaceFirst("^0+(?=\\d)", "");
+            String number2 = component2.replaceFirst("^0+(?=\\d)", "");
+            int result = Integer.compare(number1.length(), number2.length());
+            return result == 0 ? number1.compareTo(number2) : result;
+        }
+        if (numeric1 != numeric2) {
+            return numeric1 ? -1 : 1;
+        }
+        return component1.compareTo(component2);
+    }
+
+    private void readBatch(byte[] batch) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(batch));
+        while (in.available() > 0) {
+            byte type = in.readByte();
+            if (type == RECORD_INDEX) {
+                String version = in.readUTF();
+                String artifact = in.readUTF();
+                int total = in.readInt();
+                String filePath = in.readUTF();
+                addIndex(new Index(version, artifact, total, filePath, Collections.<LogMessage> emptyList()));
+            } else if (type == RECORD_STATE) {
+                addState(State.read(in));
+            } else {
+                throw new IllegalStateException("Corrupted history store, unknown record type " + type + ": " + logFile);
+            }
+        }
+    }
+
+    private void addIndex(Index index) {
+        if (versions.isEmpty() || !versions.get(versions.size() - 1).equals(index.getVersion())) {
+            versions.add(index.getVersion());
+        }
+        indexes.add(index);
+    }
+
+    private void addState(State state) {
+        Map<Integer, Timeline> projectTimelines = timelines.get(state.projectCode);
+        if (projectTimelines == null) {
+            projectTimelines = new TreeMap<Integer, Timeline>();
+            timelines.put(state.projectCode, projectTimelines);
+        }
+        Timeline timeline = projectTimelines.get(state.id);
+        if (timeline == null) {
+            timeline = new Timeline(state.projectCode, state.id);
+            projectTimelines.put(state.id, timeline);
+        }
+        timeline.states.add(state);
+    }
+
+    /**
+     * Builds the states of a new version.
+     */
+    interface StateBuilder {
+
+        /**
+         * The builder is called when the log file is locked and all the recorded batches are replayed, i.e. the timelines are up to date.
+         *
+         * @param slot the slot of the new version
+         * @return the new states
+         * @throws IOException
+         */
+        List<State> build(int slot) throws IOException;
+
+    }
+
+    /**
+     * The states of a single (project code, ID), ordered by version slot.
+     */
+    static final class Timeline {
+
+        private final String projectCode;
+
+        private final int id;
+
+        private final List<State> states;
+
+        private Timeline(String projectCode, int id) {
+            this.projectCode = projectCode;
+            this.id = id;
+            this.states = new ArrayList<State>();
+        }
+
+        String getProjectCode() {
+            return projectCode;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        List<State> getStates() {
+            return Collections.unmodifiableList(states);
+        }
+
+        /**
+         *
+         * @return the last recorded state
+         */
+        State getLastState() {
+            return states.get(states.size() - 1);
+        }
+
+        /**
+         *
+         * @return the last state which contains at least one message or <code>null</code>
+         */
+        State getLastPresentState() {
+            for (int i = states.size() - 1; i >= 0; i--) {
+                if (!states.get(i).messages.isEmpty()) {
+                    return states.get(i);
+                }
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * The messages with the given ID from the given version slot on.
+     */
+    static final class State {
+
+        private final String projectCode;
+
+        private final int id;
+
+        private final int slot;
+
+        private final List<LogMessage> messages;
+
+        // True if the messages are different from the messages of the previous version
+        private final boolean difference;
+
+        // The slot of the last version containing the ID before this state, -1 if there are no collisions
+        private final int collisionSlot;
+
+        private final Set<String> collisions;
+
+        State(String projectCode, int id, int slot, List<LogMessage> messages, boolean difference, int collisionSlot, Collection<String> collisions) {
+            this.projectCode = projectCode;
+            this.id = id;
+            this.slot = slot;
+            this.messages = messages;
+            this.difference = difference;
+            this.collisionSlot = collisions.isEmpty() ? -1 : collisionSlot;
+            this.collisions = new TreeSet<String>(collisions);
+        }
+
+        int getSlot() {
+            return slot;
+        }
+
+        List<LogMessage> getMessages() {
+            return messages;
+        }
+
+        boolean isDifference() {
+            return difference;
+        }
+
+        boolean hasCollisions() {
+            return !collisions.isEmpty();
+        }
+
+        int getCollisionSlot() {
+            return collisionSlot;
+        }
+
+        Set<String> getCollisions() {
+            return collisions;
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(projectCode);
+            out.writeInt(id);
+            out.writeInt(slot);
+            out.writeBoolean(difference);
+            out.writeInt(collisionSlot);
+            out.writeInt(collisions.size());
+            for (String collision : collisions) {
+                out.writeUTF(collision);
+            }
+            out.writeInt(messages.size());
+            for (LogMessage message : messages) {
+                message.write(out);
+            }
+        }
+
+        private static State read(DataInputStream in) throws IOException {
+            String projectCode = in.readUTF();
+            int id = in.readInt();
+            int slot = in.readInt();
+            boolean difference = in.readBoolean();
+            int collisionSlot = in.readInt();
+            List<String> collisions = new ArrayList<String>();
+            for (int i = in.readInt(); i > 0; i--) {
+                collisions.add(in.readUTF());
+            }
+            List<LogMessage> messages = new ArrayList<LogMessage>();
+            for (int i = in.readInt(); i > 0; i--) {
+                messages.add(LogMessage.read(in));
+            }
+            return new State(projectCode, id, slot, messages, difference, collisionSlot, collisions);
+        }
+
+    }
+
+}
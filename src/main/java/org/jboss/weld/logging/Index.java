@@ -0,0 +1,329 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import static org.jboss.weld.logging.Strings.ARTIFACT;
+import static org.jboss.weld.logging.Strings.DESCRIPTION;
+import static org.jboss.weld.logging.Strings.MESSAGES;
+import static org.jboss.weld.logging.Strings.TOTAL;
+import static org.jboss.weld.logging.Strings.VERSION;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.internal.bind.JsonTreeWriter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Parsed log message index.
+ *
+ * @author Martin Kouba
+ */
+final class Index {
+
+    private final String version;
+
+    private final String artifact;
+
+    private final int total;
+
+    private final String filePath;
+
+    private final List<LogMessage> messages;
+
+    Index(String version, String artifact, int total, String filePath, List<LogMessage> messages) {
+        this.version = version;
+        this.artifact = artifact;
+        this.total = total;
+        this.filePath = filePath;
+        this.messages = Collections.unmodifiableList(messages);
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    String getArtifact() {
+        return artifact;
+    }
+
+    int getTotal() {
+        return total;
+    }
+
+    String getFilePath() {
+        return filePath;
+    }
+
+    List<LogMessage> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Writes the JSON representation of this index. Note that the file path is not written.
+     *
+     * @param writer
+     * @throws IOException
+     */
+    void write(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name(VERSION).value(version);
+        writer.name(ARTIFACT).value(artifact);
+        writer.name(TOTAL).value(total);
+        writer.name(MESSAGES).beginArray();
+        for (LogMessage message : messages) {
+            message.write(writer);
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    /**
+     *
+     * @return the JSON representation of this index
+     */
+    JsonObject toJson() {
+        JsonTreeWriter writer = new JsonTreeWriter();
+        try {
+            write(writer);
+        } catch (IOException e) {
+            // Cannot happen
+            throw new IllegalStateException(e);
+        }
+        return writer.get().getAsJsonObject();
+    }
+
+    /**
+     * Both the JSON and the binary format are supported.
+     *
+     * @param indexFile
+     * @return the index read from the given file
+     * @throws IOException
+     */
+    static Index read(File indexFile) throws IOException {
+        return read(indexFile, true);
+    }
+
+    /**
+     * Both the JSON and the binary format are supported. A JSON index is read directly from the memory-mapped file, without building the JSON tree first.
+     *
+     * @param indexFile
+     * @param retainDescriptions if set to <code>false</code> only the description hashes are kept for a JSON index, see also
+     *        {@link #readDescriptions(BitSet)}
+     * @return the index read from the given file
+     * @throws IOException
+     */
+    static Index read(File indexFile, boolean retainDescriptions) throws IOException {
+        return read(indexFile, retainDescriptions, new StringPool());
+    }
+
+    /**
+     *
+     * @param indexFile
+     * @param retainDescriptions
+     * @param pool the pool used for all the string values, may be shared by multiple index files
+     * @return the index read from the given file
+     * @throws IOException
+     * @see #read(File, boolean)
+     */
+    static Index read(File indexFile, boolean retainDescriptions, StringPool pool) throws IOException {
+        if (BinaryIndex.isBinaryIndex(indexFile)) {
+            return BinaryIndex.read(indexFile, pool);
+        }
+        try {
+            return MappedIndexReader.read(indexFile, retainDescriptions, pool);
+        } catch (MappedIndexReader.UnsupportedSyntaxException e) {
+            return readJson(indexFile, retainDescriptions, pool);
+        }
+    }
+
+    /**
+     * Reads a JSON index with {@link JsonReader}. Any syntax accepted by the lenient reader is supported.
+     *
+     * @param indexFile
+     * @param retainDescriptions
+     * @param pool the pool used for all the string values
+     * @return the index read from the given file
+     * @throws IOException
+     */
+    static Index readJson(File indexFile, boolean retainDescriptions, StringPool pool) throws IOException {
+        try (JsonReader reader = newReader(indexFile.toPath())) {
+            String version = null;
+            String artifact = null;
+            Integer total = null;
+            List<LogMessage> messages = new ArrayList<LogMessage>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case VERSION:
+                        version = LogMessage.nextString(reader);
+                        break;
+                    case ARTIFACT:
+                        artifact = LogMessage.nextString(reader);
+                        break;
+                    case TOTAL:
+                        total = reader.nextInt();
+                        break;
+                    case MESSAGES:
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            messages.add(LogMessage.read(reader, retainDescriptions, pool));
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            // Version and artifact must be always set
+            if (version == null || artifact == null) {
+                throw new IllegalStateException("Version and artifact must be set: " + indexFile);
+            }
+            return new Index(version, artifact, total != null ? total : messages.size(), indexFile.toPath().toString(), messages);
+        }
+    }
+
+    /**
+     * Reads the version, the artifact and the total of the given index file. A JSON index is only read until these members are found.
+     *
+     * @param indexFile
+     * @return the index without messages
+     * @throws IOException
+     */
+    static Index readMetadata(File indexFile) throws IOException {
+        if (BinaryIndex.isBinaryIndex(indexFile)) {
+            return BinaryIndex.readMetadata(indexFile);
+        }
+        try (JsonReader reader = newReader(indexFile.toPath())) {
+            String version = null;
+            String artifact = null;
+            Integer total = null;
+            int count = 0;
+            reader.beginObject();
+            while (reader.hasNext() && (version == null || artifact == null || total == null)) {
+                switch (reader.nextName()) {
+                    case VERSION:
+                        version = LogMessage.nextString(reader);
+                        break;
+                    case ARTIFACT:
+                        artifact = LogMessage.nextString(reader);
+                        break;
+                    case TOTAL:
+                        total = reader.nextInt();
+                        break;
+                    case MESSAGES:
+                        // The total may not be set
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            reader.skipValue();
+                            count++;
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            if (version == null || artifact == null) {
+                throw new IllegalStateException("Version and artifact must be set: " + indexFile);
+            }
+            return new Index(version, artifact, total != null ? total : count, indexFile.toPath().toString(), Collections.<LogMessage> emptyList());
+        }
+    }
+
+    /**
+     * Reads the descriptions which were not retained when reading this index.
+     *
+     * @param positions the positions of messages whose descriptions should be read
+     * @return the map of message positions to descriptions
+     * @throws IOException
+     */
+    Map<Integer, String> readDescriptions(BitSet positions) throws IOException {
+        Map<Integer, String> descriptions = new HashMap<Integer, String>();
+        try (JsonReader reader = newReader(Paths.get(filePath))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!MESSAGES.equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                for (int position = 0; reader.hasNext(); position++) {
+                    if (!positions.get(position)) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (DESCRIPTION.equals(reader.nextName())) {
+                            descriptions.put(position, LogMessage.nextString(reader));
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        }
+        return descriptions;
+    }
+
+    private static JsonReader newReader(Path path) throws IOException {
+        JsonReader reader = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+        // Be as lenient as JsonParser
+        reader.setLenient(true);
+        return reader;
+    }
+
+    /**
+     *
+     * @param json
+     * @param filePath
+     * @return the index for the given JSON representation
+     */
+    static Index fromJson(JsonObject json, String filePath) {
+        JsonArray messagesArray = json.get(MESSAGES).getAsJsonArray();
+        List<LogMessage> messages = new ArrayList<LogMessage>(messagesArray.size());
+        for (JsonElement messageElement : messagesArray) {
+            messages.add(LogMessage.fromJson(messageElement.getAsJsonObject()));
+        }
+        JsonElement total = json.get(TOTAL);
+        // Version and artifact must be always set
+        return new Index(json.get(VERSION).getAsString(), json.get(ARTIFACT).getAsString(), total != null ? total.getAsInt() : messages.size(), filePath,
+                messages);
+    }
+
+}
@@ -32,6 +32,8 @@ import com.google.gson.JsonNull;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.internal.Streams;
+import com.google.gson.internal.bind.JsonTreeReader;
+import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
 
 /**
@@ -43,21 +45,122 @@ final class Json {
     private Json() {
     }
 
+    /**
+     * A binary index file is detected automatically and converted to its JSON representation.
+     *
+     * @param inputFile
+     * @return the JSON element read from the given file
+     * @throws IOException
+     */
     static JsonElement readJsonElementFromFile(File inputFile) throws IOException {
+        if (BinaryIndex.isBinaryIndex(inputFile)) {
+            return BinaryIndex.read(inputFile).toJson();
+        }
         try (Reader reader = Files.newBufferedReader(inputFile.toPath(), Charset.forName("UTF-8"))) {
             JsonParser jsonParser = new JsonParser();
             return jsonParser.parse(reader);
         }
     }
 
+    /**
+     * A binary index file is detected automatically and its JSON representation is read from the tree. The caller is responsible for closing the
+     * reader.
+     *
+     * @param inputFile
+     * @return a new lenient JSON reader for the given file
+     * @throws IOException
+     */
+    static JsonReader openJsonReader(File inputFile) throws IOException {
+        if (BinaryIndex.isBinaryIndex(inputFile)) {
+            return new JsonTreeReader(BinaryIndex.read(inputFile).toJson());
+        }
+        JsonReader reader = new JsonReader(Files.newBufferedReader(inputFile.toPath(), Charset.forName("UTF-8")));
+        reader.setLenient(true);
+        return reader;
+    }
+
     static void writeJsonElementToFile(JsonElement element, File outputFile) throws IOException {
-        try (Writer writer = Files.newBufferedWriter(outputFile.toPath(), Charset.forName("UTF-8"))) {
-            JsonWriter jsonWriter = new JsonWriter(writer);
-            jsonWriter.setHtmlSafe(true);
+        try (JsonWriter jsonWriter = openJsonWriter(outputFile)) {
             Streams.write(element, jsonWriter);
         }
     }
 
+    /**
+     * The caller is responsible for closing the writer.
+     *
+     * @param outputFile
+     * @return a new JSON writer for the given file
+     * @throws IOException
+     */
+    static JsonWriter openJsonWriter(File outputFile) throws IOException {
+        Writer writer = Files.newBufferedWriter(outputFile.toPath(), Charset.forName("UTF-8"));
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.setHtmlSafe(true);
+        return jsonWriter;
+    }
+
+    static void writeJsonElement(JsonElement element, JsonWriter jsonWriter) throws IOException {
+        Streams.write(element, jsonWriter);
+    }
+
+    /**
+     * Copies the next value from the reader to the writer token by token, i.e. without building the JSON tree.
+     *
+     * @param reader
+     * @param writer
+     * @throws IOException
+     */
+    static void copyJsonValue(JsonReader reader, JsonWriter writer) throws IOException {
+        int depth = 0;
+        do {
+            switch (reader.peek()) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    writer.beginArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    writer.endArray();
+                    depth--;
+                    break;
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    writer.beginObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    writer.endObject();
+                    depth--;
+                    break;
+                case NAME:
+                    writer.name(reader.nextName());
+                    break;
+                case STRING:
+                    writer.value(reader.nextString());
+                    break;
+                case NUMBER:
+                    String number = reader.nextString();
+                    try {
+                        writer.value(Long.parseLong(number));
+                    } catch (NumberFormatException e) {
+                        writer.value(Double.parseDouble(number));
+                    }
+                    break;
+                case BOOLEAN:
+                    writer.value(reader.nextBoolean());
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    writer.nullValue();
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected token: " + reader.peek());
+            }
+        } while (depth > 0);
+    }
+
     static JsonElement wrapPrimitive(AnnotationValue annotationValue) {
         return wrapPrimitive(annotationValue.getValue());
     }
@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import org.trimou.engine.priority.Priorities;
+import org.trimou.engine.resolver.AbstractResolver;
+import org.trimou.engine.resolver.Placeholder;
+import org.trimou.engine.resolver.ResolutionContext;
+import org.trimou.engine.resolver.ThisResolver;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Resolves the members of the index, diff and matrix JSON objects directly, so that neither the reflection nor the generic Gson resolver has to
+ * be consulted. JSON primitives are unwrapped and a JSON null is resolved as {@link Placeholder#NULL}, the same way
+ * {@link org.trimou.gson.resolver.JsonElementResolver} does. The only other name supported is {@value #IS_JSON_NULL}.
+ *
+ * <p>
+ * This resolver has the highest priority and the same hint is returned for all the template positions where a JSON element was matched - the
+ * hint skips the resolver chain for all the subsequent renderings of the position.
+ * </p>
+ *
+ * @author Martin Kouba
+ */
+final class JsonResolver extends AbstractResolver {
+
+    static final String IS_JSON_NULL = "isJsonNull";
+
+    private final Hint hint;
+
+    JsonResolver() {
+        super(Priorities.rightBefore(ThisResolver.THIS_RESOLVER_PRIORITY));
+        this.hint = new Hint() {
+            @Override
+            public Object resolve(Object contextObject, String name, ResolutionContext context) {
+                return JsonResolver.this.resolve(contextObject, name, context);
+            }
+        };
+    }
+
+    @Override
+    public Object resolve(Object contextObject, String name, ResolutionContext context) {
+        if (!(contextObject instanceof JsonElement)) {
+            return null;
+        }
+        JsonElement element = (JsonElement) contextObject;
+        if (element.isJsonObject()) {
+            JsonElement member = element.getAsJsonObject().get(name);
+            if (member != null) {
+                return unwrap(member);
+            }
+        }
+        if (IS_JSON_NULL.equals(name)) {
+            return element.isJsonNull();
+        }
+        return null;
+    }
+
+    @Override
+    public Hint createHint(Object contextObject, String name, ResolutionContext context) {
+        return hint;
+    }
+
+    private static Object unwrap(JsonElement element) {
+        if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isString()) {
+                return primitive.getAsString();
+            }
+            if (primitive.isBoolean()) {
+                return primitive.getAsBoolean();
+            }
+            return primitive.getAsNumber();
+        }
+        if (element.isJsonNull()) {
+            return Placeholder.NULL;
+        }
+        return element;
+    }
+
+}
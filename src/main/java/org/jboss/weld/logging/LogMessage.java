@@ -0,0 +1,904 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import static org.jboss.weld.logging.Strings.DESCRIPTION;
+import static org.jboss.weld.logging.Strings.FORMAT;
+import static org.jboss.weld.logging.Strings.ID;
+import static org.jboss.weld.logging.Strings.INTERFACE;
+import static org.jboss.weld.logging.Strings.LEVEL;
+import static org.jboss.weld.logging.Strings.LOGGING_CLASS;
+import static org.jboss.weld.logging.Strings.LOG_MESSAGE;
+import static org.jboss.weld.logging.Strings.MESSAGE;
+import static org.jboss.weld.logging.Strings.METHOD_INFO;
+import static org.jboss.weld.logging.Strings.PROJECT_CODE;
+import static org.jboss.weld.logging.Strings.RETURN_TYPE;
+import static org.jboss.weld.logging.Strings.SIGNATURE;
+import static org.jboss.weld.logging.Strings.SUPPRESSIONS;
+import static org.jboss.weld.logging.Strings.SUPPRESS_WARNINGS_PREFIX;
+import static org.jboss.weld.logging.Strings.VALUE;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.internal.bind.JsonTreeWriter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Immutable representation of a single log message index entry. See also {@link LogMessageIndexGenerator} for the JSON format.
+ *
+ * <p>
+ * Note that messages don't need to have the ID specified (0) or may inherit the ID from another message with the same name (-1). If the ID is not
+ * specified at all, {@link #getId()} returns -1.
+ * </p>
+ *
+ * <p>
+ * Every message has a stable 64-bit fingerprint computed over the canonical form of its <code>msg</code>, <code>log</code> and <code>method</code>
+ * members. The fingerprint is not stored in the index but computed when a message is read. A <code>fingerprint</code> member found in an index
+ * written by an older version of the tools is ignored.
+ * </p>
+ *
+ * @author Martin Kouba
+ */
+final class LogMessage {
+
+    // Suppression mask bits
+    static final int SUPPRESS_PROJECT_CODE = 1;
+
+    static final int SUPPRESS_DESCRIPTION = 1 << 1;
+
+    static final int SUPPRESS_SIGNATURE = 1 << 2;
+
+    static final int SUPPRESS_RETURN_TYPE = 1 << 3;
+
+    static final int SUPPRESS_INTERFACE = 1 << 4;
+
+    // The log message flag itself, i.e. the presence of the log member
+    static final int SUPPRESS_LOG_MESSAGE = 1 << 5;
+
+    static final int SUPPRESS_LEVEL = 1 << 6;
+
+    static final int SUPPRESS_LOGGING_CLASS = 1 << 7;
+
+    static final int SUPPRESS_ID = 1 << 8;
+
+    static final int SUPPRESS_VALUE = 1 << 9;
+
+    static final int SUPPRESS_FORMAT = 1 << 10;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final char SEPARATOR = '\u0000';
+
+    // Noncharacter, never used in the actual values
+    private static final char NULL_MARKER = '\uffff';
+
+    static final long NO_DESCRIPTION_HASH = hash(null);
+
+    private final String projectCode;
+
+    // Method info
+    private final String signature;
+
+    private final String returnType;
+
+    private final String interfaceName;
+
+    // Log message, i.e. the method is annotated with @LogMessage
+    private final boolean logMessage;
+
+    private final String level;
+
+    private final String loggingClass;
+
+    // Message
+    private final boolean hasId;
+
+    private final int id;
+
+    private final String value;
+
+    private final String format;
+
+    private final List<String> suppressions;
+
+    private final int suppressionMask;
+
+    private final String description;
+
+    // Descriptions are compared using the hash so that the description text does not need to be retained
+    private final long descriptionHash;
+
+    private final long fingerprint;
+
+    private final int hash;
+
+    /**
+     *
+     * @param projectCode
+     * @param signature
+     * @param returnType
+     * @param interfaceName
+     * @param logMessage
+     * @param level
+     * @param loggingClass
+     * @param id may be null
+     * @param value
+     * @param format
+     * @param suppressions may be null
+     * @param description may be null
+     */
+    LogMessage(String projectCode, String signature, String returnType, String interfaceName, boolean logMessage, String level, String loggingClass,
+            Integer id, String value, String format, List<String> suppressions, String description) {
+        this(projectCode, signature, returnType, interfaceName, logMessage, level, loggingClass, id, value, format, suppressions, description,
+                hash(description));
+    }
+
+    /**
+     * The description may not be retained, see also {@link #isDescriptionMissing()}.
+     */
+    LogMessage(String projectCode, String signature, String returnType, String interfaceName, boolean logMessage, String level,
+            String loggingClass, Integer id, String value, String format, List<String> suppressions, String description, long descriptionHash) {
+        this.projectCode = projectCode;
+        this.signature = signature;
+        this.returnType = returnType;
+        this.interfaceName = interfaceName;
+        this.logMessage = logMessage;
+        this.level = level;
+        this.loggingClass = loggingClass;
+        this.hasId = id != null;
+        this.id = id != null ? id : -1;
+        this.value = value;
+        this.format = format;
+        this.suppressions = suppressions != null ? Collections.unmodifiableList(suppressions) : null;
+        this.suppressionMask = toSuppressionMask(suppressions);
+        this.description = description;
+        this.descriptionHash = descriptionHash;
+        this.fingerprint = computeFingerprint();
+        this.hash = computeHash();
+    }
+
+    String getProjectCode() {
+        return projectCode;
+    }
+
+    String getSignature() {
+        return signature;
+    }
+
+    String getReturnType() {
+        return returnType;
+    }
+
+    String getInterfaceName() {
+        return interfaceName;
+    }
+
+    boolean isLogMessage() {
+        return logMessage;
+    }
+
+    String getLevel() {
+        return level;
+    }
+
+    String getLoggingClass() {
+        return loggingClass;
+    }
+
+    boolean hasId() {
+        return hasId;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    String getValue() {
+        return value;
+    }
+
+    String getFormat() {
+        return format;
+    }
+
+    /**
+     *
+     * @return the list of suppressions or <code>null</code> if no suppressions are declared
+     */
+    List<String> getSuppressions() {
+        return suppressions;
+    }
+
+    /**
+     *
+     * @return the description or <code>null</code> if there is no description or the description is not retained
+     */
+    String getDescription() {
+        return description;
+    }
+
+    /**
+     *
+     * @return the hash of the description
+     */
+    long getDescriptionHash() {
+        return descriptionHash;
+    }
+
+    boolean hasDescription() {
+        return descriptionHash != NO_DESCRIPTION_HASH;
+    }
+
+    /**
+     *
+     * @return <code>true</code> if the message has a description which is not retained, see also {@link #read(JsonReader, boolean)}
+     */
+    boolean isDescriptionMissing() {
+        return description == null && hasDescription();
+    }
+
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    boolean hasMethodInfo() {
+        return signature != null || returnType != null || interfaceName != null;
+    }
+
+    boolean hasMessage() {
+        return hasId || value != null || format != null;
+    }
+
+    /**
+     *
+     * @return the mask of members suppressed by this message, see also {@link #SUPPRESS_PROJECT_CODE} etc.
+     */
+    int getSuppressionMask() {
+        return suppressionMask;
+    }
+
+    /**
+     *
+     * @param suppressionMask
+     * @return <code>true</code> if the method info is present and not completely suppressed
+     */
+    boolean hasMethodInfo(int suppressionMask) {
+        return isPresent(suppressionMask, SUPPRESS_SIGNATURE, signature) || isPresent(suppressionMask, SUPPRESS_RETURN_TYPE, returnType)
+                || isPresent(suppressionMask, SUPPRESS_INTERFACE, interfaceName);
+    }
+
+    /**
+     *
+     * @param suppressionMask
+     * @return <code>true</code> if this is a log message and the <code>log</code> member is not suppressed
+     */
+    boolean isLogMessage(int suppressionMask) {
+        return logMessage && (suppressionMask & SUPPRESS_LOG_MESSAGE) == 0;
+    }
+
+    /**
+     *
+     * @param suppressionMask
+     * @return <code>true</code> if the message is present and not completely suppressed
+     */
+    boolean hasMessage(int suppressionMask) {
+        return (hasId && (suppressionMask & SUPPRESS_ID) == 0) || isPresent(suppressionMask, SUPPRESS_VALUE, value)
+                || isPresent(suppressionMask, SUPPRESS_FORMAT, format);
+    }
+
+    /**
+     * Suppressions are not taken into account.
+     *
+     * @param other
+     * @return <code>true</code> if all the members except for suppressions are equal
+     */
+    boolean contentEquals(LogMessage other) {
+        return contentEquals(other, 0);
+    }
+
+    /**
+     * The suppressed members are skipped, e.g. for <code>weldlog:msg-value</code> the message values are not compared. Suppressions declared on
+     * the messages are not taken into account.
+     *
+     * @param other
+     * @param suppressionMask
+     * @return <code>true</code> if all the members which are not suppressed are equal
+     */
+    boolean contentEquals(LogMessage other, int suppressionMask) {
+        return (isSuppressed(suppressionMask, SUPPRESS_ID) || (id == other.id && hasId == other.hasId))
+                && isLogMessage(suppressionMask) == other.isLogMessage(suppressionMask)
+                && isEqual(suppressionMask, SUPPRESS_VALUE, value, other.value) && isEqual(suppressionMask, SUPPRESS_SIGNATURE, signature, other.signature)
+                && isEqual(suppressionMask, SUPPRESS_LEVEL, level, other.level)
+                && isEqual(suppressionMask, SUPPRESS_PROJECT_CODE, projectCode, other.projectCode)
+                && isEqual(suppressionMask, SUPPRESS_RETURN_TYPE, returnType, other.returnType)
+                && isEqual(suppressionMask, SUPPRESS_INTERFACE, interfaceName, other.interfaceName)
+                && isEqual(suppressionMask, SUPPRESS_LOGGING_CLASS, loggingClass, other.loggingClass)
+                && isEqual(suppressionMask, SUPPRESS_FORMAT, format, other.format)
+                && (isSuppressed(suppressionMask, SUPPRESS_DESCRIPTION) || descriptionHash == other.descriptionHash);
+    }
+
+    static boolean isSuppressed(int suppressionMask, int member) {
+        return (suppressionMask & member) != 0;
+    }
+
+    /**
+     * E.g. for <code>weldlog:msg</code> the message id, value and format are suppressed.
+     *
+     * @param suppressions may be null
+     * @return the mask of members suppressed by the given suppression values
+     */
+    static int toSuppressionMask(Collection<String> suppressions) {
+        if (suppressions == null) {
+            return 0;
+        }
+        int mask = 0;
+        for (String suppression : suppressions) {
+            if (!suppression.startsWith(SUPPRESS_WARNINGS_PREFIX)) {
+                continue;
+            }
+            switch (suppression.substring(SUPPRESS_WARNINGS_PREFIX.length())) {
+                case PROJECT_CODE:
+                    mask |= SUPPRESS_PROJECT_CODE;
+                    break;
+                case DESCRIPTION:
+                    mask |= SUPPRESS_DESCRIPTION;
+                    break;
+                case METHOD_INFO:
+                    mask |= SUPPRESS_SIGNATURE | SUPPRESS_RETURN_TYPE | SUPPRESS_INTERFACE;
+                    break;
+                case METHOD_INFO + "-" + SIGNATURE:
+                    mask |= SUPPRESS_SIGNATURE;
+                    break;
+                case METHOD_INFO + "-" + RETURN_TYPE:
+                    mask |= SUPPRESS_RETURN_TYPE;
+                    break;
+                case METHOD_INFO + "-" + INTERFACE:
+                    mask |= SUPPRESS_INTERFACE;
+                    break;
+                case LOG_MESSAGE:
+                    mask |= SUPPRESS_LOG_MESSAGE | SUPPRESS_LEVEL | SUPPRESS_LOGGING_CLASS;
+                    break;
+                case LOG_MESSAGE + "-" + LEVEL:
+                    mask |= SUPPRESS_LEVEL;
+                    break;
+                case LOG_MESSAGE + "-" + LOGGING_CLASS:
+                    mask |= SUPPRESS_LOGGING_CLASS;
+                    break;
+                case MESSAGE:
+                    mask |= SUPPRESS_ID | SUPPRESS_VALUE | SUPPRESS_FORMAT;
+                    break;
+                case MESSAGE + "-" + ID:
+                    mask |= SUPPRESS_ID;
+                    break;
+                case MESSAGE + "-" + VALUE:
+                    mask |= SUPPRESS_VALUE;
+                    break;
+                case MESSAGE + "-" + FORMAT:
+                    mask |= SUPPRESS_FORMAT;
+                    break;
+                default:
+                    // Unknown member - nothing to suppress
+                    break;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Writes the JSON representation of this message. If the description is not retained it's not written.
+     *
+     * @param writer
+     * @throws IOException
+     */
+    void write(JsonWriter writer) throws IOException {
+        write(writer, null);
+    }
+
+    /**
+     *
+     * @param writer
+     * @param missingDescription the description written if the description is not retained, may be null
+     * @throws IOException
+     * @see #isDescriptionMissing()
+     */
+    void write(JsonWriter writer, String missingDescription) throws IOException {
+        writer.beginObject();
+        writeMember(writer, PROJECT_CODE, projectCode);
+        if (hasMethodInfo()) {
+            writer.name(METHOD_INFO).beginObject();
+            writeMember(writer, SIGNATURE, signature);
+            writeMember(writer, RETURN_TYPE, returnType);
+            writeMember(writer, INTERFACE, interfaceName);
+            writer.endObject();
+        }
+        if (logMessage) {
+            writer.name(LOG_MESSAGE).beginObject();
+            writeMember(writer, LEVEL, level);
+            writeMember(writer, LOGGING_CLASS, loggingClass);
+            writer.endObject();
+        }
+        if (hasMessage()) {
+            writer.name(MESSAGE).beginObject();
+            if (hasId) {
+                writer.name(ID).value(id);
+            }
+            writeMember(writer, VALUE, value);
+            writeMember(writer, FORMAT, format);
+            writer.endObject();
+        }
+        if (suppressions != null) {
+            writer.name(SUPPRESSIONS).beginArray();
+            for (String suppression : suppressions) {
+                writer.value(suppression);
+            }
+            writer.endArray();
+        }
+        writeMember(writer, DESCRIPTION, description != null ? description : missingDescription);
+        writer.endObject();
+    }
+
+    /**
+     *
+     * @return the JSON representation of this message
+     */
+    JsonObject toJson() {
+        JsonTreeWriter writer = new JsonTreeWriter();
+        try {
+            write(writer);
+        } catch (IOException e) {
+            // Cannot happen
+            throw new IllegalStateException(e);
+        }
+        return writer.get().getAsJsonObject();
+    }
+
+    /**
+     *
+     * @param json
+     * @return the message for the given JSON representation
+     */
+    static LogMessage fromJson(JsonObject json) {
+        String signature = null;
+        String returnType = null;
+        String interfaceName = null;
+        JsonObject methodInfo = getObject(json, METHOD_INFO);
+        if (methodInfo != null) {
+            signature = getString(methodInfo, SIGNATURE);
+            returnType = getString(methodInfo, RETURN_TYPE);
+            interfaceName = getString(methodInfo, INTERFACE);
+        }
+        String level = null;
+        String loggingClass = null;
+        JsonObject log = getObject(json, LOG_MESSAGE);
+        if (log != null) {
+            level = getString(log, LEVEL);
+            loggingClass = getString(log, LOGGING_CLASS);
+        }
+        Integer id = null;
+        String value = null;
+        String format = null;
+        JsonObject message = getObject(json, MESSAGE);
+        if (message != null) {
+            JsonElement idElement = message.get(ID);
+            if (idElement != null && !idElement.isJsonNull()) {
+                id = idElement.getAsInt();
+            }
+            value = getString(message, VALUE);
+            format = getString(message, FORMAT);
+        }
+        List<String> suppressions = null;
+        JsonElement suppressionsElement = json.get(SUPPRESSIONS);
+        if (suppressionsElement != null && suppressionsElement.isJsonArray()) {
+            suppressions = new ArrayList<String>(suppressionsElement.getAsJsonArray().size());
+            for (JsonElement suppression : suppressionsElement.getAsJsonArray()) {
+                suppressions.add(suppression.getAsString());
+            }
+        }
+        return new LogMessage(getString(json, PROJECT_CODE), signature, returnType, interfaceName, log != null, level, loggingClass, id, value, format,
+                suppressions, getString(json, DESCRIPTION));
+    }
+
+    /**
+     * Reads the next message directly from the given reader, i.e. without building the JSON tree first. Unknown members are skipped.
+     *
+     * @param reader
+     * @param retainDescription if set to <code>false</code> only the hash of the description is kept
+     * @return the message read from the given reader
+     * @throws IOException
+     */
+    static LogMessage read(JsonReader reader, boolean retainDescription) throws IOException {
+        return read(reader, retainDescription, new StringPool());
+    }
+
+    /**
+     * Reads the next message directly from the given reader, i.e. without building the JSON tree first. Unknown members are skipped.
+     *
+     * @param reader
+     * @param retainDescription if set to <code>false</code> only the hash of the description is kept
+     * @param pool the pool used for all the string values
+     * @return the message read from the given reader
+     * @throws IOException
+     */
+    static LogMessage read(JsonReader reader, boolean retainDescription, StringPool pool) throws IOException {
+        String projectCode = null;
+        String signature = null;
+        String returnType = null;
+        String interfaceName = null;
+        boolean logMessage = false;
+        String level = null;
+        String loggingClass = null;
+        Integer id = null;
+        String value = null;
+        String format = null;
+        List<String> suppressions = null;
+        String description = null;
+        long descriptionHash = NO_DESCRIPTION_HASH;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case PROJECT_CODE:
+                    projectCode = pool.intern(nextString(reader));
+                    break;
+                case METHOD_INFO:
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case SIGNATURE:
+                                signature = pool.intern(nextString(reader));
+                                break;
+                            case RETURN_TYPE:
+                                returnType = pool.intern(nextString(reader));
+                                break;
+                            case INTERFACE:
+                                interfaceName = pool.intern(nextString(reader));
+                                break;
+                            default:
+                                reader.skipValue();
+                                break;
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case LOG_MESSAGE:
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    logMessage = true;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case LEVEL:
+                                level = pool.intern(nextString(reader));
+                                break;
+                            case LOGGING_CLASS:
+                                loggingClass = pool.intern(nextString(reader));
+                                break;
+                            default:
+                                reader.skipValue();
+                                break;
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case MESSAGE:
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case ID:
+                                if (reader.peek() == JsonToken.NULL) {
+                                    reader.nextNull();
+                                } else {
+                                    id = reader.nextInt();
+                                }
+                                break;
+                            case VALUE:
+                                value = pool.intern(nextString(reader));
+                                break;
+                            case FORMAT:
+                                format = pool.intern(nextString(reader));
+                                break;
+                            default:
+                                reader.skipValue();
+                                break;
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case SUPPRESSIONS:
+                    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    suppressions = new ArrayList<String>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        suppressions.add(pool.intern(nextString(reader)));
+                    }
+                    reader.endArray();
+                    break;
+                case DESCRIPTION:
+                    String desc = nextString(reader);
+                    descriptionHash = hash(desc);
+                    description = retainDescription ? pool.intern(desc) : null;
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new LogMessage(projectCode, signature, returnType, interfaceName, logMessage, level, loggingClass, id, value, format, suppressions,
+                description, descriptionHash);
+    }
+
+    /**
+     * Writes the binary representation of this message. Unlike {@link BinaryIndex} the strings are written inline, i.e. every message can be read
+     * separately.
+     *
+     * @param out
+     * @throws IOException
+     * @see #read(DataInput)
+     */
+    void write(DataOutput out) throws IOException {
+        writeString(out, projectCode);
+        writeString(out, signature);
+        writeString(out, returnType);
+        writeString(out, interfaceName);
+        writeString(out, level);
+        writeString(out, loggingClass);
+        writeString(out, value);
+        writeString(out, format);
+        writeString(out, description);
+        out.writeBoolean(logMessage);
+        out.writeBoolean(hasId);
+        out.writeInt(id);
+        out.writeLong(descriptionHash);
+        if (suppressions == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(suppressions.size());
+            for (String suppression : suppressions) {
+                writeString(out, suppression);
+            }
+        }
+    }
+
+    /**
+     *
+     * @param in
+     * @return the message read from its binary representation
+     * @throws IOException
+     * @see #write(DataOutput)
+     */
+    static LogMessage read(DataInput in) throws IOException {
+        String projectCode = readString(in);
+        String signature = readString(in);
+        String returnType = readString(in);
+        String interfaceName = readString(in);
+        String level = readString(in);
+        String loggingClass = readString(in);
+        String value = readString(in);
+        String format = readString(in);
+        String description = readString(in);
+        boolean logMessage = in.readBoolean();
+        boolean hasId = in.readBoolean();
+        int id = in.readInt();
+        long descriptionHash = in.readLong();
+        int suppressionsCount = in.readInt();
+        List<String> suppressions = null;
+        if (suppressionsCount >= 0) {
+            suppressions = new ArrayList<String>(suppressionsCount);
+            for (int i = 0; i < suppressionsCount; i++) {
+                suppressions.add(readString(in));
+            }
+        }
+        return new LogMessage(projectCode, signature, returnType, interfaceName, logMessage, level, loggingClass, hasId ? id : null, value, format,
+                suppressions, description, descriptionHash);
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     *
+     * @param reader
+     * @return the next string, number or boolean value as a string, or <code>null</code> for JSON null
+     * @throws IOException
+     */
+    static String nextString(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return null;
+            case BOOLEAN:
+                return Boolean.toString(reader.nextBoolean());
+            default:
+                return reader.nextString();
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LogMessage)) {
+            return false;
+        }
+        LogMessage other = (LogMessage) obj;
+        return hash == other.hash && contentEquals(other) && Objects.equals(suppressions, other.suppressions);
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the canonical form of the <code>msg</code>, <code>log</code> and <code>method</code> members. Absent members are
+     * distinguished from empty ones.
+     *
+     * @return the fingerprint
+     */
+    private long computeFingerprint() {
+        long result = FNV_OFFSET_BASIS;
+        result = fingerprint(result, MESSAGE);
+        result = fingerprint(result, hasId ? Integer.toString(id) : null);
+        result = fingerprint(result, value);
+        result = fingerprint(result, format);
+        result = fingerprint(result, logMessage ? LOG_MESSAGE : null);
+        result = fingerprint(result, level);
+        result = fingerprint(result, loggingClass);
+        result = fingerprint(result, METHOD_INFO);
+        result = fingerprint(result, signature);
+        result = fingerprint(result, returnType);
+        result = fingerprint(result, interfaceName);
+        return result;
+    }
+
+    /**
+     *
+     * @param value
+     * @return the 64-bit FNV-1a hash of the given value
+     */
+    static long hash(String value) {
+        return fingerprint(FNV_OFFSET_BASIS, value);
+    }
+
+    /**
+     *
+     * @param chars
+     * @param offset
+     * @param length
+     * @return the 64-bit FNV-1a hash of the given characters, the same as {@link #hash(String)} for the corresponding string
+     */
+    static long hash(char[] chars, int offset, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            hash = fingerprint(hash, chars[i]);
+        }
+        return fingerprint(hash, SEPARATOR);
+    }
+
+    private static long fingerprint(long hash, String value) {
+        if (value == null) {
+            hash = fingerprint(hash, NULL_MARKER);
+        } else {
+            for (int i = 0; i < value.length(); i++) {
+                hash = fingerprint(hash, value.charAt(i));
+            }
+        }
+        return fingerprint(hash, SEPARATOR);
+    }
+
+    private static long fingerprint(long hash, char value) {
+        hash ^= value >>> 8;
+        hash *= FNV_PRIME;
+        hash ^= value & 0xFF;
+        hash *= FNV_PRIME;
+        return hash;
+    }
+
+    private int computeHash() {
+        int result = 1;
+        result = 31 * result + id;
+        result = 31 * result + (hasId ? 1 : 0);
+        result = 31 * result + (logMessage ? 1 : 0);
+        result = 31 * result + Objects.hashCode(projectCode);
+        result = 31 * result + Objects.hashCode(signature);
+        result = 31 * result + Objects.hashCode(returnType);
+        result = 31 * result + Objects.hashCode(interfaceName);
+        result = 31 * result + Objects.hashCode(level);
+        result = 31 * result + Objects.hashCode(loggingClass);
+        result = 31 * result + Objects.hashCode(value);
+        result = 31 * result + Objects.hashCode(format);
+        result = 31 * result + Long.hashCode(descriptionHash);
+        result = 31 * result + Objects.hashCode(suppressions);
+        result = 31 * result + Long.hashCode(fingerprint);
+        return result;
+    }
+
+    private static boolean isPresent(int suppressionMask, int member, String value) {
+        return value != null && (suppressionMask & member) == 0;
+    }
+
+    private static boolean isEqual(int suppressionMask, int member, String value1, String value2) {
+        return (suppressionMask & member) != 0 || Objects.equals(value1, value2);
+    }
+
+    private static void writeMember(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null) {
+            writer.name(name).value(value);
+        }
+    }
+
+    private static JsonObject getObject(JsonObject json, String name) {
+        JsonElement element = json.get(name);
+        return element != null && element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+
+    private static String getString(JsonObject json, String name) {
+        JsonElement element = json.get(name);
+        return element != null && !element.isJsonNull() ? element.getAsString() : null;
+    }
+
+}
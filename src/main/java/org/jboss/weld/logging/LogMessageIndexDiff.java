@@ -16,43 +16,75 @@
  */
 package org.jboss.weld.logging;
 
+import static org.jboss.weld.logging.LogMessage.SUPPRESS_DESCRIPTION;
+import static org.jboss.weld.logging.LogMessage.SUPPRESS_FORMAT;
+import static org.jboss.weld.logging.LogMessage.SUPPRESS_ID;
+import static org.jboss.weld.logging.LogMessage.SUPPRESS_INTERFACE;
+import static org.jboss.weld.logging.LogMessage.SUPPRESS_LEVEL;
+import static org.jboss.weld.logging.LogMessage.SUPPRESS_LOGGING_CLASS;
+import static org.jboss.weld.logging.LogMessage.SUPPRESS_PROJECT_CODE;
+import static org.jboss.weld.logging.LogMessage.SUPPRESS_RETURN_TYPE;
+import static org.jboss.weld.logging.LogMessage.SUPPRESS_SIGNATURE;
+import static org.jboss.weld.logging.LogMessage.SUPPRESS_VALUE;
+import static org.jboss.weld.logging.LogMessage.isSuppressed;
 import static org.jboss.weld.logging.Strings.ARTIFACT;
-import static org.jboss.weld.logging.Strings.COLLISIONS;
+import static org.jboss.weld.logging.Strings.ARTIFACTS;
+import static org.jboss.weld.logging.Strings.DESCRIPTION;
 import static org.jboss.weld.logging.Strings.DETECT_COLLISIONS_ONLY;
 import static org.jboss.weld.logging.Strings.DIFFERENCES;
+import static org.jboss.weld.logging.Strings.DIFF_FILE;
 import static org.jboss.weld.logging.Strings.FILE_PATH;
+import static org.jboss.weld.logging.Strings.FORMAT;
 import static org.jboss.weld.logging.Strings.ID;
 import static org.jboss.weld.logging.Strings.INDEXES;
+import static org.jboss.weld.logging.Strings.INTERFACE;
+import static org.jboss.weld.logging.Strings.LEVEL;
+import static org.jboss.weld.logging.Strings.LOGGING_CLASS;
+import static org.jboss.weld.logging.Strings.LOG_MESSAGE;
+import static org.jboss.weld.logging.Strings.MATRIX;
 import static org.jboss.weld.logging.Strings.MESSAGE;
-import static org.jboss.weld.logging.Strings.MESSAGES;
+import static org.jboss.weld.logging.Strings.METHOD_INFO;
 import static org.jboss.weld.logging.Strings.PROJECT_CODE;
-import static org.jboss.weld.logging.Strings.SUPPRESSIONS;
-import static org.jboss.weld.logging.Strings.SUPPRESS_WARNINGS_PREFIX;
+import static org.jboss.weld.logging.Strings.RETURN_TYPE;
+import static org.jboss.weld.logging.Strings.SIGNATURE;
 import static org.jboss.weld.logging.Strings.TOTAL;
 import static org.jboss.weld.logging.Strings.VALUE;
 import static org.jboss.weld.logging.Strings.VERSION;
+import static org.jboss.weld.logging.Strings.VERSIONS;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.internal.bind.JsonTreeWriter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Generates a diff file with the following JSON format:
@@ -114,6 +146,98 @@ import com.google.gson.JsonParser;
  */
 public class LogMessageIndexDiff {
 
+    static final String SUMMARY_FILE_NAME = "summary.json";
+
+    // Smaller lists of messages with the same ID are compared pair by pair
+    private static final int BUCKETS_THRESHOLD = 8;
+
+    // The maximum number of IDs processed by a single task
+    private static final int PARTITION_SIZE = 128;
+
+    // Versions are compared the same way as in the history store
+    private static final Comparator<Index> INDEX_COMPARATOR = new Comparator<Index>() {
+        @Override
+        public int compare(Index o1, Index o2) {
+            int result = HistoryStore.VERSION_COMPARATOR.compare(o1.getVersion(), o2.getVersion());
+            return result == 0 ? o1.getArtifact().compareTo(o2.getArtifact()) : result;
+        }
+    };
+
+    private final int parallelism;
+
+    private final boolean retainDescriptions;
+
+    // Zero if all the indexes are kept in memory
+    private final long memoryBudget;
+
+    // Null if the diff results are not cached
+    private final DiffCache cache;
+
+    public LogMessageIndexDiff() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     *
+     * @param parallelism the maximum number of threads used to process the index files and to find the differences
+     */
+    public LogMessageIndexDiff(int parallelism) {
+        this(parallelism, true);
+    }
+
+    /**
+     *
+     * @param parallelism the maximum number of threads used to process the index files and to find the differences
+     * @param retainDescriptions if set to <code>false</code> the message descriptions are not kept in memory, only the descriptions of the messages
+     *        which are part of a difference are read again before the diff is written
+     */
+    public LogMessageIndexDiff(int parallelism, boolean retainDescriptions) {
+        this(parallelism, retainDescriptions, 0);
+    }
+
+    /**
+     *
+     * @param parallelism the maximum number of threads used to process the index files and to find the differences
+     * @param retainDescriptions if set to <code>false</code> the message descriptions are not kept in memory, only the descriptions of the messages
+     *        which are part of a difference are read again before the diff is written
+     * @param memoryBudget if greater than zero, the messages are sorted by project code and ID on the local disk and the heap used for the messages
+     *        is limited to approximately the given number of bytes, see also {@link ExternalMessageSorter}; the index files are processed one by
+     *        one and a single index file must still fit in memory
+     */
+    public LogMessageIndexDiff(int parallelism, boolean retainDescriptions, long memoryBudget) {
+        this(parallelism, retainDescriptions, memoryBudget, null, 0);
+    }
+
+    /**
+     *
+     * @param parallelism the maximum number of threads used to process the index files and to find the differences
+     * @param retainDescriptions if set to <code>false</code> the message descriptions are not kept in memory, only the descriptions of the messages
+     *        which are part of a difference are read again before the diff is written
+     * @param memoryBudget if greater than zero, the messages are sorted by project code and ID on the local disk and the heap used for the messages
+     *        is limited to approximately the given number of bytes, see also {@link ExternalMessageSorter}; the index files are processed one by
+     *        one and a single index file must still fit in memory
+     * @param cacheDirectory if not <code>null</code>, the diff results are cached in the given directory and a repeated diff of the same index files
+     *        is not generated again; the cache is not used if the version of the tools code is unknown, see also {@link DiffCache}
+     * @param cacheSize the maximum total size of the cached results in bytes, ignored if the cache directory is <code>null</code>
+     */
+    public LogMessageIndexDiff(int parallelism, boolean retainDescriptions, long memoryBudget, File cacheDirectory, long cacheSize) {
+        this(parallelism, retainDescriptions, memoryBudget,
+                cacheDirectory != null && DiffCache.isSupported() ? new DiffCache(cacheDirectory, cacheSize) : null);
+    }
+
+    private LogMessageIndexDiff(int parallelism, boolean retainDescriptions, long memoryBudget, DiffCache cache) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be greater than zero: " + parallelism);
+        }
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative: " + memoryBudget);
+        }
+        this.parallelism = parallelism;
+        this.retainDescriptions = retainDescriptions;
+        this.memoryBudget = memoryBudget;
+        this.cache = cache;
+    }
+
     /**
      *
      * @param args
@@ -128,16 +252,55 @@ public class LogMessageIndexDiff {
         File outputFile = null;
         List<File> indexFiles = new ArrayList<File>();
         boolean detectCollisionsOnly = false;
+        boolean retainDescriptions = true;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        long memoryBudget = 0;
+        File storeDirectory = null;
+        File cacheDirectory = null;
+        long cacheSize = DiffCache.DEFAULT_MAX_SIZE;
+        boolean matrix = false;
+        boolean batch = false;
 
         for (int i = 0; i < args.length; i++) {
             String arg = args[i];
             if ("-o".equals(arg)) {
-                if (i >= args.length) {
+                if (i + 1 >= args.length) {
                     throw new IllegalArgumentException("-o switch requires an output file name");
                 }
                 outputFile = new File(args[++i]);
+            } else if ("-p".equals(arg)) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("-p switch requires the number of threads");
+                }
+                parallelism = Integer.parseInt(args[++i]);
+            } else if ("-m".equals(arg)) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("-m switch requires the memory budget in megabytes");
+                }
+                memoryBudget = Long.parseLong(args[++i]) * 1024 * 1024;
+            } else if ("-s".equals(arg)) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("-s switch requires the history store directory");
+                }
+                storeDirectory = new File(args[++i]);
+            } else if ("-k".equals(arg)) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("-k switch requires the cache directory");
+                }
+                cacheDirectory = new File(args[++i]);
+            } else if ("-K".equals(arg)) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("-K switch requires the maximum cache size in megabytes");
+                }
+                cacheSize = Long.parseLong(args[++i]) * 1024 * 1024;
             } else if ("-c".equals(arg)) {
                 detectCollisionsOnly = true;
+            } else if ("-l".equals(arg)) {
+                retainDescriptions = false;
+            } else if ("-x".equals(arg)) {
+                matrix = true;
+            } else if ("-b".equals(arg)) {
+                batch = true;
             } else {
                 // Index file
                 File file = new File(arg);
@@ -147,12 +310,7 @@ public class LogMessageIndexDiff {
                 if (file.isFile()) {
                     indexFiles.add(file);
                 } else if (file.isDirectory()) {
-                    Collections.addAll(indexFiles, file.listFiles(new FileFilter() {
-                        @Override
-                        public boolean accept(File pathname) {
-                            return pathname.isFile() && !pathname.isHidden();
-                        }
-                    }));
+                    indexFiles.addAll(listIndexFiles(file));
                 }
             }
         }
@@ -161,65 +319,256 @@ public class LogMessageIndexDiff {
             throw new IllegalStateException("The output file must be specified!");
         }
 
-        LogMessageIndexDiff generator = new LogMessageIndexDiff();
-        generator.createDiffFile(outputFile, generator.generate(indexFiles, detectCollisionsOnly));
+        if (matrix && (detectCollisionsOnly || memoryBudget > 0 || storeDirectory != null || cacheDirectory != null)) {
+            throw new IllegalStateException("The version matrix cannot be combined with -c, -k, -m or -s");
+        }
+
+        if (batch && (matrix || storeDirectory != null)) {
+            throw new IllegalStateException("The batch mode cannot be combined with -s or -x");
+        }
+
+        LogMessageIndexDiff generator = new LogMessageIndexDiff(parallelism, retainDescriptions, memoryBudget, cacheDirectory, cacheSize);
+        if (batch) {
+            generator.createDiffFiles(outputFile, indexFiles, detectCollisionsOnly);
+        } else if (matrix) {
+            generator.createMatrixFile(outputFile, indexFiles);
+        } else if (storeDirectory != null) {
+            if (!indexFiles.isEmpty()) {
+                generator.appendToHistory(storeDirectory, indexFiles);
+            }
+            generator.createDiffFileFromHistory(outputFile, storeDirectory, detectCollisionsOnly);
+        } else {
+            generator.createDiffFile(outputFile, indexFiles, detectCollisionsOnly);
+        }
     }
 
     private static void printUsage() {
-        System.out.println("Usage: java -jar weld-logging-tools-shaded.jar [-c] -o file-name FILEORDIR...");
+        System.out.println("Usage: java -jar weld-logging-tools-shaded.jar [-b] [-c] [-k directory] [-K megabytes] [-l] [-m megabytes] [-p threads] [-s directory] [-x] -o file-name FILEORDIR...");
         System.out.println("Options:");
+        System.out.println("  -b  group the index files by artifact and generate a diff for every artifact, -o names the output directory");
         System.out.println("  -c  detect only collisions");
+        System.out.println("  -k  cache the diff results in the directory, a repeated diff of the same index files is read from the cache");
+        System.out.println("  -K  maximum total size of the cached results, 512 MB by default");
+        System.out.println("  -l  do not keep message descriptions in memory, read them again for the differences found");
+        System.out.println("  -m  limit the memory used for messages, sort the messages on the local disk instead");
         System.out.println("  -o  name the output diff file");
+        System.out.println("  -p  maximum number of threads, the number of available processors by default");
+        System.out.println("  -s  append the index files to the history store in the directory and generate the diff from the store");
+        System.out.println("  -x  generate the version matrix instead of the diff - the versions are grouped into classes of equal messages for every ID");
     }
 
     /**
      * Generates the JSON diff for the specified index files.
      *
      * @param indexFiles
-     * @param outputFile
      * @param detectCollisionsOnly
-     * @return
+     * @return the JSON diff
      */
     public JsonObject generate(List<File> indexFiles, boolean detectCollisionsOnly) {
+        JsonTreeWriter writer = new JsonTreeWriter();
+        try {
+            generate(indexFiles, detectCollisionsOnly, writer);
+        } catch (IOException e) {
+            // Cannot happen
+            throw new IllegalStateException(e);
+        }
+        return writer.get().getAsJsonObject();
+    }
+
+    /**
+     * Generates the JSON diff for the specified index files and writes it to the given writer. Every difference is written directly from the parsed
+     * index files, i.e. the JSON tree of the whole diff is never built.
+     *
+     * @param indexFiles
+     * @param detectCollisionsOnly
+     * @param writer
+     * @throws IOException
+     */
+    public void generate(List<File> indexFiles, boolean detectCollisionsOnly, JsonWriter writer) throws IOException {
+        if (cache != null) {
+            String key = cache.getKey(indexFiles, detectCollisionsOnly);
+            if (cache.read(key, writer) || (addToCache(key, indexFiles, detectCollisionsOnly) && cache.read(key, writer))) {
+                return;
+            }
+        }
+        generateUncached(indexFiles, detectCollisionsOnly, writer);
+    }
+
+    private void generateUncached(List<File> indexFiles, boolean detectCollisionsOnly, JsonWriter writer) throws IOException {
 
         if (indexFiles.size() < 2) {
             throw new IllegalStateException("More than one index file must be specified: " + indexFiles);
         }
 
+        if (memoryBudget > 0) {
+            generateExternal(indexFiles, detectCollisionsOnly, writer);
+            return;
+        }
+
         // First parse the index files
-        List<JsonObject> indexes = parseIndexFiles(indexFiles);
+        List<Index> indexes = parseIndexFiles(indexFiles);
 
         // Build indexes metadata and check compared versions
+        List<String> versions = new ArrayList<String>();
+        int[] versionSlots = new int[indexes.size()];
+        JsonArray indexesMeta = buildIndexesMeta(indexes, versions, versionSlots);
+
+        // Now let's find the differences
+        // Note that messages don't need to have the ID specified (0) or may inherit the ID from another message with the same name (-1)
+        List<Difference> differences = findDifferences(detectCollisionsOnly, MessageTable.build(indexes, versionSlots, versions.size()));
+        Map<LogMessage, String> descriptions = readMissingDescriptions(indexes, differences);
+
+        writer.beginObject();
+        writer.name(INDEXES);
+        Json.writeJsonElement(indexesMeta, writer);
+        writer.name(DETECT_COLLISIONS_ONLY).value(detectCollisionsOnly);
+        writer.name(TOTAL).value(differences.size());
+        writer.name(DIFFERENCES);
+        if (differences.isEmpty()) {
+            writer.nullValue();
+        } else {
+            writer.beginArray();
+            for (Difference difference : differences) {
+                difference.write(writer, versions, descriptions);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    /**
+     * The index files are read one by one and the messages are passed to the {@link ExternalMessageSorter}. The messages with the same project code
+     * and ID are then compared group by group as they come out of the merge. The differences are written to a temporary file first because the
+     * total is written before the differences. The groups are processed serially.
+     *
+     * @param indexFiles
+     * @param detectCollisionsOnly
+     * @param writer
+     * @throws IOException
+     */
+    private void generateExternal(List<File> indexFiles, boolean detectCollisionsOnly, JsonWriter writer) throws IOException {
+        File differencesFile = File.createTempFile("weld-logging-diff", ".json");
+        try (ExternalMessageSorter sorter = new ExternalMessageSorter(memoryBudget)) {
+            // Only the metadata of the indexes is kept in memory
+            final List<Index> indexes = new ArrayList<Index>();
+            for (File indexFile : indexFiles) {
+                Index index = Index.read(indexFile, true);
+                for (int i = 0; i < index.getMessages().size(); i++) {
+                    sorter.add(index.getMessages().get(i), indexes.size(), i);
+                }
+                indexes.add(new Index(index.getVersion(), index.getArtifact(), index.getTotal(), index.getFilePath(), Collections.<LogMessage> emptyList()));
+            }
+
+            // Sort indexes by version and artifact
+            List<Integer> order = new ArrayList<Integer>();
+            for (int i = 0; i < indexes.size(); i++) {
+                order.add(i);
+            }
+            Collections.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return INDEX_COMPARATOR.compare(indexes.get(o1), indexes.get(o2));
+                }
+            });
+            List<Index> sortedIndexes = new ArrayList<Index>();
+            int[] ranks = new int[indexes.size()];
+            for (int i = 0; i < order.size(); i++) {
+                sortedIndexes.add(indexes.get(order.get(i)));
+                ranks[order.get(i)] = i;
+            }
+
+            List<String> versions = new ArrayList<String>();
+            int[] versionSlots = new int[indexes.size()];
+            JsonArray indexesMeta = buildIndexesMeta(sortedIndexes, versions, versionSlots);
+
+            int total = 0;
+            try (JsonWriter differencesWriter = Json.openJsonWriter(differencesFile)) {
+                differencesWriter.beginArray();
+                List<ExternalMessageSorter.Entry> group;
+                while ((group = sorter.nextGroup()) != null) {
+                    MessageTable table = buildTable(group, ranks, versionSlots, versions.size());
+                    for (Difference difference : findDifferences(detectCollisionsOnly, table, 0, table.size())) {
+                        difference.write(differencesWriter, versions, Collections.<LogMessage, String> emptyMap());
+                        total++;
+                    }
+                }
+                differencesWriter.endArray();
+            }
+
+            writer.beginObject();
+            writer.name(INDEXES);
+            Json.writeJsonElement(indexesMeta, writer);
+            writer.name(DETECT_COLLISIONS_ONLY).value(detectCollisionsOnly);
+            writer.name(TOTAL).value(total);
+            writer.name(DIFFERENCES);
+            if (total == 0) {
+                writer.nullValue();
+            } else {
+                try (JsonReader reader = new JsonReader(Files.newBufferedReader(differencesFile.toPath(), StandardCharsets.UTF_8))) {
+                    Json.copyJsonValue(reader, writer);
+                }
+            }
+            writer.endObject();
+        } finally {
+            Files.deleteIfExists(differencesFile.toPath());
+        }
+    }
+
+    /**
+     *
+     * @param group the messages with the same project code and ID
+     * @param ranks the position of every index in the sorted list of indexes
+     * @param versionSlots the version slot of every sorted index
+     * @param versionCount
+     * @return the table of a single ID
+     */
+    private MessageTable buildTable(List<ExternalMessageSorter.Entry> group, final int[] ranks, int[] versionSlots, int versionCount) {
+        // Messages must be added in the order of version slots
+        Collections.sort(group, new Comparator<ExternalMessageSorter.Entry>() {
+            @Override
+            public int compare(ExternalMessageSorter.Entry o1, ExternalMessageSorter.Entry o2) {
+                int result = Integer.compare(ranks[o1.getIndex()], ranks[o2.getIndex()]);
+                return result == 0 ? Integer.compare(o1.getPosition(), o2.getPosition()) : result;
+            }
+        });
+        MessageTable.Builder builder = new MessageTable.Builder(group.get(0).getMessage().getProjectCode(), versionCount);
+        for (ExternalMessageSorter.Entry entry : group) {
+            int rank = ranks[entry.getIndex()];
+            builder.add(entry.getMessage(), versionSlots[rank], rank, entry.getPosition());
+        }
+        return builder.build();
+    }
+
+    /**
+     *
+     * @param indexes the sorted list of indexes
+     * @param versions the list the distinct versions are added to
+     * @param versionSlots the version slot of every index is stored in this array
+     * @return the metadata of the indexes
+     */
+    private JsonArray buildIndexesMeta(List<Index> indexes, List<String> versions, int[] versionSlots) {
         JsonArray indexesMeta = new JsonArray();
         List<String> indexesIds = new ArrayList<String>();
-        Set<JsonElement> versions = new HashSet<JsonElement>();
-        for (Iterator<JsonObject> iterator = indexes.iterator(); iterator.hasNext();) {
-            JsonObject index = iterator.next();
-            JsonElement version = index.get(VERSION);
-            versions.add(version);
-            String indexId = version.getAsString() + index.get(ARTIFACT).getAsString();
+        // Indexes with the same version share the same version slot
+        for (int i = 0; i < indexes.size(); i++) {
+            Index index = indexes.get(i);
+            if (versions.isEmpty() || !versions.get(versions.size() - 1).equals(index.getVersion())) {
+                versions.add(index.getVersion());
+            }
+            versionSlots[i] = versions.size() - 1;
+            String indexId = index.getVersion() + index.getArtifact();
             if (indexesIds.contains(indexId)) {
                 throw new IllegalStateException("Unable to compare index files with the same composite identifier (version and artifact id): " + indexId);
             }
             indexesIds.add(indexId);
             JsonObject indexMeta = new JsonObject();
-            indexMeta.add(VERSION, version);
-            indexMeta.add(ARTIFACT, index.get(ARTIFACT));
-            indexMeta.add(TOTAL, index.get(TOTAL));
-            indexMeta.add(FILE_PATH, index.get(FILE_PATH));
+            indexMeta.add(VERSION, Json.wrapPrimitive(index.getVersion()));
+            indexMeta.add(ARTIFACT, Json.wrapPrimitive(index.getArtifact()));
+            indexMeta.add(TOTAL, Json.wrapPrimitive(index.getTotal()));
+            indexMeta.add(FILE_PATH, Json.wrapPrimitive(index.getFilePath()));
             indexesMeta.add(indexMeta);
         }
-
-        // Now let's find the differences
-        // Note that messages don't need to have the ID specified (0) or may inherit the ID from another message with the same name (-1)
-        JsonArray differences = findDifferences(versions.size(), detectCollisionsOnly, buildDataMap(indexes));
-
-        JsonObject diff = new JsonObject();
-        diff.add(INDEXES, indexesMeta);
-        diff.add(DETECT_COLLISIONS_ONLY, Json.wrapPrimitive(detectCollisionsOnly));
-        diff.add(TOTAL, Json.wrapPrimitive(differences.size()));
-        diff.add(DIFFERENCES, differences.size() > 0 ? differences : JsonNull.INSTANCE);
-        return diff;
+        return indexesMeta;
     }
 
     /**
@@ -235,251 +584,1054 @@ public class LogMessageIndexDiff {
         }
     }
 
-    private List<JsonObject> parseIndexFiles(List<File> indexFiles) {
-        List<JsonObject> indexes = new ArrayList<JsonObject>();
-        for (File indexFile : indexFiles) {
+    /**
+     * Generates the diff for the specified index files and writes it to the output file.
+     *
+     * @param outputFile
+     * @param indexFiles
+     * @param detectCollisionsOnly
+     */
+    public void createDiffFile(File outputFile, List<File> indexFiles, boolean detectCollisionsOnly) {
+        if (cache != null) {
             try {
-                JsonObject index = Json.readJsonElementFromFile(indexFile).getAsJsonObject();
-                index.add(FILE_PATH, Json.wrapPrimitive(indexFile.toPath().toString()));
-                indexes.add(index);
+                String key = cache.getKey(indexFiles, detectCollisionsOnly);
+                // The cached diff is copied as is
+                if (cache.read(key, initOutputFile(outputFile)) || (addToCache(key, indexFiles, detectCollisionsOnly) && cache.read(key, outputFile))) {
+                    return;
+                }
             } catch (IOException e) {
-                throw new IllegalStateException("Unable to parse the index file: " + indexFile, e);
+                throw new IllegalStateException("Unable to write the diff file", e);
             }
         }
-        // Sort indexes by version and artifact
-        Collections.sort(indexes, new Comparator<JsonObject>() {
+        try (JsonWriter writer = Json.openJsonWriter(initOutputFile(outputFile))) {
+            generate(indexFiles, detectCollisionsOnly, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write the diff file", e);
+        }
+    }
+
+    /**
+     * Generates the diff and stores the result in the cache.
+     *
+     * @param key
+     * @param indexFiles
+     * @param detectCollisionsOnly
+     * @return <code>true</code> if the result was stored, <code>false</code> if an index file was modified while the diff was generated
+     * @throws IOException
+     */
+    private boolean addToCache(String key, final List<File> indexFiles, final boolean detectCollisionsOnly) throws IOException {
+        cache.write(key, new DiffCache.Content() {
             @Override
-            public int compare(JsonObject o1, JsonObject o2) {
-                // Version and artifact must be always set
-                int result = o1.get(VERSION).getAsString().compareTo(o2.get(VERSION).getAsString());
-                return result == 0 ? o1.get(ARTIFACT).getAsString().compareTo(o2.get(ARTIFACT).getAsString()) : result;
+            public void write(JsonWriter writer) throws IOException {
+                generateUncached(indexFiles, detectCollisionsOnly, writer);
             }
         });
-        return indexes;
+        if (!key.equals(cache.getKey(indexFiles, detectCollisionsOnly))) {
+            cache.remove(key);
+            return false;
+        }
+        return true;
     }
 
     /**
-     * @param indexes
-     * @return a map of project codes to map of ids to map of versions to messages
+     * Groups the specified index files by artifact and generates a diff for every artifact. The diffs of different artifacts are generated
+     * concurrently. Every diff is written to the file <code>diff-{artifact}.json</code> in the output directory. Finally, the summary of all the
+     * artifacts is written to {@value #SUMMARY_FILE_NAME}. An artifact with a single index file is only listed in the summary.
+     *
+     * @param outputDirectory
+     * @param indexFiles
+     * @param detectCollisionsOnly
+     * @return the map of artifacts to diff files, ordered by artifact
+     */
+    public Map<String, File> createDiffFiles(File outputDirectory, List<File> indexFiles, boolean detectCollisionsOnly) {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IllegalStateException("Unable to create the output directory: " + outputDirectory);
+        }
+        // Only the metadata are read to group the files
+        Map<String, List<Index>> artifacts = new TreeMap<String, List<Index>>();
+        for (File indexFile : indexFiles) {
+            Index index;
+            try {
+                index = Index.readMetadata(indexFile);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to parse the index file: " + indexFile, e);
+            }
+            List<Index> artifactIndexes = artifacts.get(index.getArtifact());
+            if (artifactIndexes == null) {
+                artifactIndexes = new ArrayList<Index>();
+                artifacts.put(index.getArtifact(), artifactIndexes);
+            }
+            artifactIndexes.add(index);
+        }
+        Map<String, File> diffFiles = new TreeMap<String, File>();
+        Set<String> fileNames = new HashSet<String>();
+        for (Map.Entry<String, List<Index>> entry : artifacts.entrySet()) {
+            Collections.sort(entry.getValue(), INDEX_COMPARATOR);
+            if (entry.getValue().size() > 1) {
+                String fileName = "diff-" + entry.getKey().replaceAll("[^A-Za-z0-9._-]", "_") + ".json";
+                if (!fileNames.add(fileName)) {
+                    throw new IllegalStateException("Unable to create a unique diff file name for the artifact: " + entry.getKey());
+                }
+                diffFiles.put(entry.getKey(), new File(outputDirectory, fileName));
+            }
+        }
+        // Threads are split between the artifacts
+        int threads = Math.max(1, Math.min(parallelism, diffFiles.size()));
+        final LogMessageIndexDiff generator = new LogMessageIndexDiff(Math.max(1, parallelism / threads), retainDescriptions, memoryBudget, cache);
+        final boolean detect = detectCollisionsOnly;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Map<String, Integer> totals = new HashMap<String, Integer>();
+        try {
+            Map<String, Future<Integer>> futures = new LinkedHashMap<String, Future<Integer>>();
+            for (Map.Entry<String, File> entry : diffFiles.entrySet()) {
+                final File diffFile = entry.getValue();
+                final List<File> artifactFiles = new ArrayList<File>();
+                for (Index index : artifacts.get(entry.getKey())) {
+                    artifactFiles.add(new File(index.getFilePath()));
+                }
+                futures.put(entry.getKey(), executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        generator.createDiffFile(diffFile, artifactFiles, detect);
+                        return readTotal(diffFile);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<Integer>> entry : futures.entrySet()) {
+                try {
+                    totals.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Unable to generate the diff for the artifact: " + entry.getKey(), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating the diffs", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        try (JsonWriter writer = Json.openJsonWriter(initOutputFile(new File(outputDirectory, SUMMARY_FILE_NAME)))) {
+            writer.beginObject();
+            writer.name(DETECT_COLLISIONS_ONLY).value(detectCollisionsOnly);
+            writer.name(ARTIFACTS).beginArray();
+            for (Map.Entry<String, List<Index>> entry : artifacts.entrySet()) {
+                writer.beginObject();
+                writer.name(ARTIFACT).value(entry.getKey());
+                writer.name(VERSIONS).beginArray();
+                for (Index index : entry.getValue()) {
+                    writer.value(index.getVersion());
+                }
+                writer.endArray();
+                File diffFile = diffFiles.get(entry.getKey());
+                writer.name(DIFF_FILE).value(diffFile != null ? diffFile.getName() : null);
+                writer.name(TOTAL).value(totals.get(entry.getKey()));
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write the summary file", e);
+        }
+        return diffFiles;
+    }
+
+    /**
+     * The total is written before the differences.
+     *
+     * @param diffFile
+     * @return the total number of differences in the given diff file
+     * @throws IOException
      */
-    private Map<String, Map<Integer, Map<String, List<JsonObject>>>> buildDataMap(List<JsonObject> indexes) {
+    private static int readTotal(File diffFile) throws IOException {
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(diffFile.toPath(), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (TOTAL.equals(reader.nextName())) {
+                    return reader.nextInt();
+                }
+                reader.skipValue();
+            }
+        }
+        throw new IllegalStateException("The total is not set: " + diffFile);
+    }
 
-        // Map message ID to the map of versions to messages
-        // We use the TreeMap so that the keys are ordered
-        Map<String, Map<Integer, Map<String, List<JsonObject>>>> dataMap = new HashMap<String, Map<Integer, Map<String, List<JsonObject>>>>();
+    /**
+     * Generates the version matrix for the specified index files.
+     *
+     * @param indexFiles
+     * @return the JSON version matrix
+     * @see #generateMatrix(List, JsonWriter)
+     */
+    public JsonObject generateMatrix(List<File> indexFiles) {
+        JsonTreeWriter writer = new JsonTreeWriter();
+        try {
+            generateMatrix(indexFiles, writer);
+        } catch (IOException e) {
+            // Cannot happen
+            throw new IllegalStateException(e);
+        }
+        return writer.get().getAsJsonObject();
+    }
 
-        for (JsonObject index : indexes) {
+    /**
+     * Generates the version matrix for the specified index files and writes it to the given writer. For every ID the versions are grouped into
+     * equivalence classes so that the messages of any pair of versions are equal if and only if both versions belong to the same class, see also
+     * {@link VersionClasses}. Only the IDs which are not found in all the versions or whose messages are not equal in all the versions are written.
+     * The messages are only written once for every class.
+     *
+     * @param indexFiles
+     * @param writer
+     * @throws IOException
+     */
+    public void generateMatrix(List<File> indexFiles, JsonWriter writer) throws IOException {
 
-            String version = index.get(VERSION).getAsString();
+        if (indexFiles.size() < 2) {
+            throw new IllegalStateException("More than one index file must be specified: " + indexFiles);
+        }
 
-            for (JsonElement messageElement : index.get(MESSAGES).getAsJsonArray()) {
+        List<Index> indexes = parseIndexFiles(indexFiles);
+        List<String> versions = new ArrayList<String>();
+        int[] versionSlots = new int[indexes.size()];
+        JsonArray indexesMeta = buildIndexesMeta(indexes, versions, versionSlots);
 
-                JsonObject message = messageElement.getAsJsonObject();
+        List<VersionClasses> matrix = findVersionClasses(MessageTable.build(indexes, versionSlots, versions.size()));
+        Map<LogMessage, String> descriptions = readMatrixDescriptions(indexes, matrix);
 
-                String projectCode = message.get(PROJECT_CODE).getAsString();
-                Map<Integer, Map<String, List<JsonObject>>> idMap = dataMap.get(projectCode);
-                if (idMap == null) {
-                    idMap = new TreeMap<Integer, Map<String, List<JsonObject>>>();
-                    dataMap.put(projectCode, idMap);
-                }
+        writer.beginObject();
+        writer.name(INDEXES);
+        Json.writeJsonElement(indexesMeta, writer);
+        writer.name(VERSIONS).beginArray();
+        for (String version : versions) {
+            writer.value(version);
+        }
+        writer.endArray();
+        writer.name(TOTAL).value(matrix.size());
+        writer.name(MATRIX);
+        if (matrix.isEmpty()) {
+            writer.nullValue();
+        } else {
+            writer.beginArray();
+            for (VersionClasses classes : matrix) {
+                classes.write(writer, versions, descriptions);
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
 
-                int id = message.get(MESSAGE).getAsJsonObject().get(ID).getAsInt();
-                Map<String, List<JsonObject>> versionMap = idMap.get(id);
-                List<JsonObject> messages = null;
+    /**
+     * Generates the version matrix for the specified index files and writes it to the output file.
+     *
+     * @param outputFile
+     * @param indexFiles
+     */
+    public void createMatrixFile(File outputFile, List<File> indexFiles) {
+        try (JsonWriter writer = Json.openJsonWriter(initOutputFile(outputFile))) {
+            generateMatrix(indexFiles, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write the matrix file", e);
+        }
+    }
 
-                if (versionMap == null) {
-                    versionMap = new HashMap<String, List<JsonObject>>();
-                    idMap.put(id, versionMap);
-                } else {
-                    messages = versionMap.get(version);
+    /**
+     * The generator may write both the JSON and the binary index of the same version to the same directory. In that case, only the binary index is
+     * used so that the same index is not compared with itself.
+     *
+     * @param directory
+     * @return the index files in the given directory
+     */
+    static List<File> listIndexFiles(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File pathname) {
+                return pathname.isFile() && !pathname.isHidden();
+            }
+        });
+        List<File> indexFiles = new ArrayList<File>();
+        if (files == null) {
+            return indexFiles;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(BinaryIndex.FILE_SUFFIX)) {
+                // See also LogMessageIndexGenerator.getBinaryIndexFile()
+                String baseName = name.endsWith(".json") ? name.substring(0, name.length() - ".json".length()) : name;
+                if (new File(directory, baseName + BinaryIndex.FILE_SUFFIX).isFile()) {
+                    continue;
                 }
-                if (messages == null) {
-                    messages = new ArrayList<JsonObject>();
-                    versionMap.put(version, messages);
+            }
+            indexFiles.add(file);
+        }
+        return indexFiles;
+    }
+
+    /**
+     * Appends the specified index files to the history store in the given directory. Every version is only compared with the last recorded state of
+     * every ID, see also {@link HistoryStore}. Only versions newer than the last recorded version may be appended, the versions are compared component
+     * by component, see also {@link HistoryStore#VERSION_COMPARATOR}.
+     *
+     * @param storeDirectory
+     * @param indexFiles
+     */
+    public void appendToHistory(File storeDirectory, List<File> indexFiles) {
+        try {
+            HistoryStore store = HistoryStore.open(storeDirectory);
+            // Descriptions must be stored
+            List<Index> indexes = parseIndexFiles(indexFiles, true);
+            Collections.sort(indexes, INDEX_COMPARATOR);
+            int from = 0;
+            while (from < indexes.size()) {
+                // Indexes with the same version are appended together
+                int to = from + 1;
+                while (to < indexes.size() && indexes.get(to).getVersion().equals(indexes.get(from).getVersion())) {
+                    to++;
                 }
-                messages.add(message);
+                appendVersion(store, indexes.subList(from, to));
+                from = to;
             }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to append to the history store: " + storeDirectory, e);
         }
-        return dataMap;
     }
 
-    private JsonArray findDifferences(int indexCount, boolean detectCollisionsOnly, Map<String, Map<Integer, Map<String, List<JsonObject>>>> dataMap) {
-        JsonArray differences = new JsonArray();
-        // Project code -> map of ids to...
-        for (Entry<String, Map<Integer, Map<String, List<JsonObject>>>> entry : dataMap.entrySet()) {
-            // ID -> map of versions to messages
-            for (Entry<Integer, Map<String, List<JsonObject>>> idEntry : entry.getValue().entrySet()) {
-                // For every ID attempt to find a difference for all messages with this id among all indexes
+    /**
+     * Generates the JSON diff for all the versions recorded in the history store and writes it to the given writer. The result is the same as if all
+     * the index files were compared directly - in both cases the versions are ordered by {@link HistoryStore#VERSION_COMPARATOR}. The messages are
+     * not compared again, only the recorded states of every ID are checked.
+     *
+     * @param storeDirectory
+     * @param detectCollisionsOnly
+     * @param writer
+     * @throws IOException
+     */
+    public void generateFromHistory(File storeDirectory, boolean detectCollisionsOnly, JsonWriter writer) throws IOException {
+        HistoryStore store = HistoryStore.open(storeDirectory);
+        if (store.getIndexes().size() < 2) {
+            throw new IllegalStateException("More than one index must be recorded in the history store: " + storeDirectory);
+        }
+        List<String> versions = store.getVersions();
+        JsonArray indexesMeta = buildIndexesMeta(store.getIndexes(), new ArrayList<String>(), new int[store.getIndexes().size()]);
+        List<HistoryStore.Timeline> found = new ArrayList<HistoryStore.Timeline>();
+        for (HistoryStore.Timeline timeline : store.getTimelines()) {
+            if (detectCollisionsOnly ? hasCollisions(timeline) : isDifference(timeline)) {
+                found.add(timeline);
+            }
+        }
+
+        writer.beginObject();
+        writer.name(INDEXES);
+        Json.writeJsonElement(indexesMeta, writer);
+        writer.name(DETECT_COLLISIONS_ONLY).value(detectCollisionsOnly);
+        writer.name(TOTAL).value(found.size());
+        writer.name(DIFFERENCES);
+        if (found.isEmpty()) {
+            writer.nullValue();
+        } else {
+            writer.beginArray();
+            for (HistoryStore.Timeline timeline : found) {
+                MessageTable table = buildTable(timeline, versions.size());
+                Difference difference;
                 if (detectCollisionsOnly) {
-                    Set<String> collisions = getCollisions(idEntry.getValue());
-                    if (!collisions.isEmpty()) {
-                        JsonObject collision = new JsonObject();
-                        collision.add(PROJECT_CODE, Json.wrapPrimitive(entry.getKey()));
-                        collision.add(ID, Json.wrapPrimitive(idEntry.getKey()));
-                        JsonArray messages = new JsonArray();
-                        for (Entry<String, List<JsonObject>> versionEntry : idEntry.getValue().entrySet()) {
-                            for (JsonObject message : versionEntry.getValue()) {
-                                messages.add(wrap(versionEntry.getKey(), message));
-                            }
+                    difference = Difference.collision(table, 0);
+                    for (HistoryStore.State state : timeline.getStates()) {
+                        if (state.hasCollisions()) {
+                            difference.addVersionCollisions(state.getCollisionSlot(), state.getSlot(), state.getCollisions());
                         }
-                        collision.add(MESSAGES, messages);
-                        collision.add(COLLISIONS, Json.arrayFromPrimitives(collisions));
-                        differences.add(collision);
                     }
-                } else if (isDifference(indexCount, idEntry.getValue())) {
-                    JsonObject difference = new JsonObject();
-                    difference.add(PROJECT_CODE, Json.wrapPrimitive(entry.getKey()));
-                    difference.add(ID, Json.wrapPrimitive(idEntry.getKey()));
-                    JsonArray messages = new JsonArray();
-                    for (Entry<String, List<JsonObject>> versionEntry : idEntry.getValue().entrySet()) {
-                        for (JsonObject message : versionEntry.getValue()) {
-                            messages.add(wrap(versionEntry.getKey(), message));
-                        }
+                } else {
+                    difference = Difference.of(table, 0);
+                }
+                difference.write(writer, versions, Collections.<LogMessage, String> emptyMap());
+            }
+            writer.endArray();
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Generates the diff for all the versions recorded in the history store and writes it to the output file.
+     *
+     * @param outputFile
+     * @param storeDirectory
+     * @param detectCollisionsOnly
+     */
+    public void createDiffFileFromHistory(File outputFile, File storeDirectory, boolean detectCollisionsOnly) {
+        try (JsonWriter writer = Json.openJsonWriter(initOutputFile(outputFile))) {
+            generateFromHistory(storeDirectory, detectCollisionsOnly, writer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to write the diff file", e);
+        }
+    }
+
+    private void appendVersion(final HistoryStore store, List<Index> versionIndexes) throws IOException {
+        final List<MessageTable> tables = new ArrayList<MessageTable>(MessageTable.build(versionIndexes, new int[versionIndexes.size()], 1).values());
+        store.append(versionIndexes, new HistoryStore.StateBuilder() {
+            @Override
+            public List<HistoryStore.State> build(int slot) {
+                return buildStates(store, tables, slot);
+            }
+        });
+    }
+
+    /**
+     *
+     * @param store
+     * @param tables the message tables of the new version
+     * @param slot
+     * @return the states of the new version
+     */
+    private List<HistoryStore.State> buildStates(HistoryStore store, List<MessageTable> tables, int slot) {
+        List<HistoryStore.State> states = new ArrayList<HistoryStore.State>();
+        Set<HistoryStore.Timeline> present = Collections.newSetFromMap(new IdentityHashMap<HistoryStore.Timeline, Boolean>());
+        for (MessageTable table : tables) {
+            for (int idx = 0; idx < table.size(); idx++) {
+                List<LogMessage> messages = new ArrayList<LogMessage>();
+                for (int i = table.getStart(idx, 0); i < table.getEnd(idx, 0); i++) {
+                    messages.add(table.getMessage(i));
+                }
+                HistoryStore.Timeline timeline = store.getTimeline(table.getProjectCode(), table.getId(idx));
+                if (timeline != null) {
+                    present.add(timeline);
+                }
+                HistoryStore.State state = newState(timeline, table.getProjectCode(), table.getId(idx), slot, messages);
+                if (state != null) {
+                    states.add(state);
+                }
+            }
+        }
+        // IDs removed in this version
+        for (HistoryStore.Timeline timeline : store.getTimelines()) {
+            if (!present.contains(timeline) && !timeline.getLastState().getMessages().isEmpty()) {
+                states.add(new HistoryStore.State(timeline.getProjectCode(), timeline.getId(), slot, Collections.<LogMessage> emptyList(), true, -1,
+                        Collections.<String> emptySet()));
+            }
+        }
+        return states;
+    }
+
+    /**
+     *
+     * @param timeline may be null
+     * @param projectCode
+     * @param id
+     * @param slot
+     * @param messages
+     * @return the new state or <code>null</code> if the messages did not change
+     */
+    private HistoryStore.State newState(HistoryStore.Timeline timeline, String projectCode, int id, int slot, List<LogMessage> messages) {
+        List<LogMessage> previous = timeline != null ? timeline.getLastState().getMessages() : Collections.<LogMessage> emptyList();
+        if (previous.equals(messages)) {
+            return null;
+        }
+        // The first version is never a difference by itself
+        boolean difference = slot > 0 && isDifference(buildTable(projectCode, previous, messages), 0);
+        Set<String> collisions = Collections.emptySet();
+        int collisionSlot = -1;
+        HistoryStore.State lastPresent = timeline != null ? timeline.getLastPresentState() : null;
+        if (lastPresent != null) {
+            // Compare with the last version containing the ID
+            collisionSlot = timeline.getLastState() == lastPresent ? slot - 1 : timeline.getLastState().getSlot() - 1;
+            collisions = getCollisions(buildTable(projectCode, lastPresent.getMessages(), messages), 0, 0, 1);
+        }
+        return new HistoryStore.State(projectCode, id, slot, messages, difference, collisionSlot, collisions);
+    }
+
+    private boolean isDifference(HistoryStore.Timeline timeline) {
+        if (timeline.getStates().get(0).getSlot() > 0) {
+            // The ID not found in the first version
+            return true;
+        }
+        for (HistoryStore.State state : timeline.getStates()) {
+            if (state.isDifference() || state.getMessages().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasCollisions(HistoryStore.Timeline timeline) {
+        for (HistoryStore.State state : timeline.getStates()) {
+            if (state.hasCollisions()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param projectCode
+     * @param previous
+     * @param current
+     * @return the table of a single ID with two version slots
+     */
+    private MessageTable buildTable(String projectCode, List<LogMessage> previous, List<LogMessage> current) {
+        MessageTable.Builder builder = new MessageTable.Builder(projectCode, 2);
+        for (int i = 0; i < previous.size(); i++) {
+            builder.add(previous.get(i), 0, 0, i);
+        }
+        for (int i = 0; i < current.size(); i++) {
+            builder.add(current.get(i), 1, 1, i);
+        }
+        return builder.build();
+    }
+
+    /**
+     *
+     * @param timeline
+     * @param versionCount
+     * @return the table of a single ID with all the recorded versions
+     */
+    private MessageTable buildTable(HistoryStore.Timeline timeline, int versionCount) {
+        MessageTable.Builder builder = new MessageTable.Builder(timeline.getProjectCode(), versionCount);
+        List<HistoryStore.State> states = timeline.getStates();
+        for (int i = 0; i < states.size(); i++) {
+            int end = i + 1 < states.size() ? states.get(i + 1).getSlot() : versionCount;
+            List<LogMessage> messages = states.get(i).getMessages();
+            for (int slot = states.get(i).getSlot(); slot < end; slot++) {
+                for (int j = 0; j < messages.size(); j++) {
+                    builder.add(messages.get(j), slot, slot, j);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private List<Index> parseIndexFiles(List<File> indexFiles) {
+        return parseIndexFiles(indexFiles, retainDescriptions);
+    }
+
+    private List<Index> parseIndexFiles(List<File> indexFiles, final boolean retainDescriptions) {
+        // Index files are parsed concurrently
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, indexFiles.size()));
+        // All the index files share the same pool so that every distinct value is only held once
+        final StringPool pool = new StringPool();
+        List<Index> indexes = new ArrayList<Index>();
+        try {
+            List<Future<Index>> futures = new ArrayList<Future<Index>>();
+            for (final File indexFile : indexFiles) {
+                futures.add(executor.submit(new Callable<Index>() {
+                    @Override
+                    public Index call() throws IOException {
+                        return Index.read(indexFile, retainDescriptions, pool);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    indexes.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Unable to parse the index file: " + indexFiles.get(i), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while parsing the index files", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        // Sort indexes by version and artifact
+        Collections.sort(indexes, INDEX_COMPARATOR);
+        return indexes;
+    }
+
+    /**
+     * If descriptions are not retained when parsing the index files, the descriptions of messages which are part of a difference are read again.
+     *
+     * @param indexes
+     * @param differences
+     * @return the identity map of messages to their descriptions
+     * @throws IOException
+     */
+    private Map<LogMessage, String> readMissingDescriptions(List<Index> indexes, List<Difference> differences) throws IOException {
+        // Index -> positions of messages
+        BitSet[] positions = new BitSet[indexes.size()];
+        for (Difference difference : differences) {
+            MessageTable table = difference.getTable();
+            for (int version = 0; version < table.getVersionCount(); version++) {
+                addMissingDescriptions(positions, table, table.getStart(difference.getIdx(), version), table.getEnd(difference.getIdx(), version));
+            }
+        }
+        return readMissingDescriptions(indexes, positions);
+    }
+
+    /**
+     * Only the messages of the first version of every class are written.
+     *
+     * @param indexes
+     * @param matrix
+     * @return the identity map of messages to their descriptions
+     * @throws IOException
+     */
+    private Map<LogMessage, String> readMatrixDescriptions(List<Index> indexes, List<VersionClasses> matrix) throws IOException {
+        BitSet[] positions = new BitSet[indexes.size()];
+        for (VersionClasses classes : matrix) {
+            MessageTable table = classes.getTable();
+            for (int cls = 1; cls <= classes.getClassCount(); cls++) {
+                int representative = classes.getRepresentative(cls);
+                addMissingDescriptions(positions, table, table.getStart(classes.getIdx(), representative), table.getEnd(classes.getIdx(), representative));
+            }
+        }
+        return readMissingDescriptions(indexes, positions);
+    }
+
+    private void addMissingDescriptions(BitSet[] positions, MessageTable table, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (table.getMessage(i).isDescriptionMissing()) {
+                int index = table.getIndex(i);
+                if (positions[index] == null) {
+                    positions[index] = new BitSet();
+                }
+                positions[index].set(table.getPosition(i));
+            }
+        }
+    }
+
+    private Map<LogMessage, String> readMissingDescriptions(List<Index> indexes, BitSet[] positions) throws IOException {
+        Map<LogMessage, String> descriptions = new IdentityHashMap<LogMessage, String>();
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] != null) {
+                Index index = indexes.get(i);
+                for (Map.Entry<Integer, String> entry : index.readDescriptions(positions[i]).entrySet()) {
+                    LogMessage message = index.getMessages().get(entry.getKey());
+                    if (entry.getValue() == null || LogMessage.hash(entry.getValue()) != message.getDescriptionHash()) {
+                        throw new IllegalStateException("The index file was modified during processing: " + index.getFilePath());
                     }
-                    difference.add(MESSAGES, messages);
-                    differences.add(difference);
+                    descriptions.put(message, entry.getValue());
+                }
+            }
+        }
+        return descriptions;
+    }
+
+    private List<Difference> findDifferences(boolean detectCollisionsOnly, Map<String, MessageTable> tables) {
+        List<Difference> differences = new ArrayList<Difference>();
+        if (parallelism == 1) {
+            for (MessageTable table : tables.values()) {
+                differences.addAll(findDifferences(detectCollisionsOnly, table, 0, table.size()));
+            }
+            return differences;
+        }
+        // Every ID is processed independently - ID ranges are processed concurrently
+        // The partial results are merged in the order of project codes and IDs so that the result is the same as for the serial processing
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<List<Difference>>> tasks = new ArrayList<ForkJoinTask<List<Difference>>>();
+            for (MessageTable table : tables.values()) {
+                tasks.add(pool.submit(new FindDifferencesTask(detectCollisionsOnly, table, 0, table.size())));
+            }
+            for (ForkJoinTask<List<Difference>> task : tasks) {
+                differences.addAll(task.join());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return differences;
+    }
+
+    private List<VersionClasses> findVersionClasses(Map<String, MessageTable> tables) {
+        List<VersionClasses> matrix = new ArrayList<VersionClasses>();
+        if (parallelism == 1) {
+            for (MessageTable table : tables.values()) {
+                matrix.addAll(findVersionClasses(table, 0, table.size()));
+            }
+            return matrix;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<List<VersionClasses>>> tasks = new ArrayList<ForkJoinTask<List<VersionClasses>>>();
+            for (MessageTable table : tables.values()) {
+                tasks.add(pool.submit(new FindVersionClassesTask(table, 0, table.size())));
+            }
+            for (ForkJoinTask<List<VersionClasses>> task : tasks) {
+                matrix.addAll(task.join());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return matrix;
+    }
+
+    /**
+     *
+     * @param table
+     * @param from the first position, inclusive
+     * @param to the last position, exclusive
+     * @return the equivalence classes of the IDs in the given range whose messages are not equal in all the versions
+     */
+    private List<VersionClasses> findVersionClasses(MessageTable table, int from, int to) {
+        List<VersionClasses> matrix = new ArrayList<VersionClasses>();
+        for (int idx = from; idx < to; idx++) {
+            VersionClasses classes = findVersionClasses(table, idx);
+            if (!classes.isUniform()) {
+                matrix.add(classes);
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     *
+     * @param detectCollisionsOnly
+     * @param table
+     * @param from the first position, inclusive
+     * @param to the last position, exclusive
+     * @return the differences found for the IDs in the given range
+     */
+    private List<Difference> findDifferences(boolean detectCollisionsOnly, MessageTable table, int from, int to) {
+        List<Difference> differences = new ArrayList<Difference>();
+        for (int idx = from; idx < to; idx++) {
+            // For every ID attempt to find a difference for all messages with this id among all indexes
+            if (detectCollisionsOnly) {
+                Difference collision = findCollisions(table, idx);
+                if (collision != null) {
+                    differences.add(collision);
                 }
+            } else if (isDifference(table, idx)) {
+                differences.add(Difference.of(table, idx));
             }
         }
         return differences;
     }
 
-    private boolean isDifference(int indexCount, Map<String, List<JsonObject>> versionMap) {
-        if (indexCount != versionMap.size()) {
+    private boolean isDifference(MessageTable table, int idx) {
+        if (table.getVersionsFound(idx) != table.getVersionCount()) {
             // The ID not found in all indexes
             return true;
         }
-        List<List<JsonObject>> values = new ArrayList<List<JsonObject>>(versionMap.values());
-        for (int i = 1; i < values.size(); i++) {
-            List<JsonObject> current = values.get(i);
-            List<JsonObject> previous = values.get(i - 1);
-            if (current.size() != previous.size()) {
-                // The ID not found in all versions
+        for (int version = 1; version < table.getVersionCount(); version++) {
+            if (!areSlotsEqual(table, idx, version - 1, version)) {
                 return true;
             }
-            if (current.size() == 1 && previous.size() == 1) {
-                // Very often there will be only one element in the list
-                return !areMessagesEqual(current.get(0), previous.get(0));
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param table
+     * @param idx
+     * @param previous
+     * @param current
+     * @return <code>true</code> if the messages with the ID at the given position are equal in both versions
+     */
+    private boolean areSlotsEqual(MessageTable table, int idx, int previous, int current) {
+        int currentStart = table.getStart(idx, current);
+        int currentEnd = table.getEnd(idx, current);
+        int previousStart = table.getStart(idx, previous);
+        int previousEnd = table.getEnd(idx, previous);
+        if (currentEnd - currentStart != previousEnd - previousStart) {
+            // The ID not found in all versions
+            return false;
+        }
+        if (currentEnd - currentStart == 1) {
+            // Very often there will be only one element in the list
+            return areMessagesEqual(table.getMessage(currentStart), table.getMessage(previousStart));
+        }
+        // There are several messages with the same ID
+        // A diff is detected if the lists do not contain the same messages
+        // At this point we can be sure the lists have the same size
+        // Note that suppressions must be taken into account
+        if (currentEnd - currentStart < BUCKETS_THRESHOLD) {
+            for (int i = previousStart; i < previousEnd; i++) {
+                if (!messageListContains(table, currentStart, currentEnd, table.getMessage(i))) {
+                    return false;
+                }
             }
-            // There are several messages with the same ID
-            // A diff is detected if the lists do not contain the same messages
-            // At this point we can be sure the lists have the same size
-            // Note that suppressions must be taken into account
-            for (JsonObject previousMessage : previous) {
-                if (!messageListContains(current, previousMessage)) {
-                    return true;
+        } else {
+            MessageBuckets buckets = new MessageBuckets(table, currentStart, currentEnd);
+            for (int i = previousStart; i < previousEnd; i++) {
+                if (!buckets.contains(table.getMessage(i))) {
+                    return false;
                 }
             }
         }
-        return false;
+        return true;
+    }
+
+    /**
+     * The signature of every version is computed once from the fingerprints of the messages. The messages of a version are only compared with the
+     * first version of a class with the same signature, or with every class if suppressions are involved. Therefore, all the pairs of versions are
+     * covered with a number of comparisons which is linear in the number of versions, unless there are many classes.
+     * <p>
+     * Equality is not transitive if suppressions are involved - e.g. if the first version suppresses the message value, the other versions are
+     * equal to the first one even if their values differ. So if either the version or the class has suppressions, the version is compared with
+     * every member of the class and only joins the class if it is equal to all of them. Every two versions of the same class are equal, as in the
+     * pairwise diff.
+     * </p>
+     *
+     * @param table
+     * @param idx
+     * @return the equivalence classes of the versions for the ID at the given position
+     */
+    private VersionClasses findVersionClasses(MessageTable table, int idx) {
+        int versionCount = table.getVersionCount();
+        int[] slots = new int[versionCount];
+        int[] representatives = new int[versionCount];
+        // The members of a class are linked from the representative to the last member
+        int[] lastMembers = new int[versionCount];
+        int[] nextMembers = new int[versionCount];
+        long[] signatures = new long[versionCount];
+        boolean[] suppressing = new boolean[versionCount];
+        int classCount = 0;
+        for (int version = 0; version < versionCount; version++) {
+            int start = table.getStart(idx, version);
+            int end = table.getEnd(idx, version);
+            if (start == end) {
+                // The ID not found in this version
+                continue;
+            }
+            long signature = getSignature(table, start, end);
+            boolean versionSuppressing = false;
+            for (int i = start; i < end; i++) {
+                if (table.getMessage(i).getSuppressionMask() != 0) {
+                    versionSuppressing = true;
+                    break;
+                }
+            }
+            nextMembers[version] = -1;
+            for (int cls = 0; cls < classCount; cls++) {
+                // Suppressed members are not covered by the signature
+                if (versionSuppressing || suppressing[cls]) {
+                    if (!isEqualToAllMembers(table, idx, representatives[cls], nextMembers, version)) {
+                        continue;
+                    }
+                } else if (signatures[cls] != signature || !areSlotsEqual(table, idx, representatives[cls], version)) {
+                    continue;
+                }
+                slots[version] = cls + 1;
+                nextMembers[lastMembers[cls]] = version;
+                lastMembers[cls] = version;
+                suppressing[cls] |= versionSuppressing;
+                break;
+            }
+            if (slots[version] == 0) {
+                representatives[classCount] = version;
+                lastMembers[classCount] = version;
+                signatures[classCount] = signature;
+                suppressing[classCount] = versionSuppressing;
+                slots[version] = ++classCount;
+            }
+        }
+        return new VersionClasses(table, idx, slots, Arrays.copyOf(representatives, classCount));
     }
 
-    private Set<String> getCollisions(Map<String, List<JsonObject>> versionMap) {
-        List<List<JsonObject>> values = new ArrayList<List<JsonObject>>(versionMap.values());
-        for (int i = 1; i < values.size(); i++) {
-            List<JsonObject> current = values.get(i);
-            List<JsonObject> previous = values.get(i - 1);
-            if (current.size() == 1 && previous.size() == 1) {
-                // Very often there will be only one element in the list
-                return getCollisions(current.get(0), previous.get(0));
-            }
-            // TODO A collision is never detected if there are several messages with the same ID
-        }
-        return Collections.emptySet();
-    }
-
-    private boolean areMessagesEqual(JsonObject msg1, JsonObject msg2) {
-        List<String> suppressions = extractSuppressions(msg1);
-        suppressions.addAll(extractSuppressions(msg2));
-        if (!suppressions.isEmpty()) {
-            // Make a copy of JSON representations first
-            JsonParser parser = new JsonParser();
-            msg1 = parser.parse(msg1.toString()).getAsJsonObject();
-            msg2 = parser.parse(msg2.toString()).getAsJsonObject();
-            msg1.remove(SUPPRESSIONS);
-            msg2.remove(SUPPRESSIONS);
-            // Then remove all suppressed members
-            // E.g. for @SuppressWarnings("weldlog:msg-value") we'd like to remove msgObj.msg.value
-            for (String suppression : suppressions) {
-                String[] suppressionParts = suppression.substring(SUPPRESS_WARNINGS_PREFIX.length()).split("-");
-                removeSuppressedMember(msg1, suppressionParts);
-                removeSuppressedMember(msg2, suppressionParts);
-            }
-        }
-        return msg1.equals(msg2);
-    }
-
-    private Set<String> getCollisions(JsonObject msg1, JsonObject msg2) {
-        List<String> suppressions = extractSuppressions(msg1);
-        suppressions.addAll(extractSuppressions(msg2));
-        if (!suppressions.isEmpty()) {
-            // Make a copy of JSON representations first
-            JsonParser parser = new JsonParser();
-            msg1 = parser.parse(msg1.toString()).getAsJsonObject();
-            msg2 = parser.parse(msg2.toString()).getAsJsonObject();
-            msg1.remove(SUPPRESSIONS);
-            msg2.remove(SUPPRESSIONS);
-            // Then remove all suppressed members
-            // E.g. for @SuppressWarnings("weldlog:msg-value") we'd like to remove msgObj.msg.value
-            for (String suppression : suppressions) {
-                String[] suppressionParts = suppression.substring(SUPPRESS_WARNINGS_PREFIX.length()).split("-");
-                removeSuppressedMember(msg1, suppressionParts);
-                removeSuppressedMember(msg2, suppressionParts);
+    private boolean isEqualToAllMembers(MessageTable table, int idx, int representative, int[] nextMembers, int version) {
+        for (int member = representative; member != -1; member = nextMembers[member]) {
+            if (!areSlotsEqual(table, idx, member, version)) {
+                return false;
             }
         }
-        Set<String> collisions = new HashSet<>();
-        for (Entry<String, JsonElement> entry : msg1.entrySet()) {
-            JsonElement msg2Value = msg2.get(entry.getKey());
-            if (!entry.getValue().equals(msg2Value)) {
-                if (entry.getValue().isJsonObject() && msg2Value.isJsonObject()) {
-                    Set<String> nestedCollisions = getCollisions(entry.getValue().getAsJsonObject(), msg2Value.getAsJsonObject());
-                    for (String nested : nestedCollisions) {
-                        collisions.add(entry.getKey().toLowerCase() + "-" + nested);
+        return true;
+    }
+
+    /**
+     * Equal lists of messages have the same signature. Note that duplicate messages are only counted once, see also
+     * {@link #areSlotsEqual(MessageTable, int, int, int)}.
+     *
+     * @param table
+     * @param start
+     * @param end
+     * @return the signature of the messages in the given range
+     */
+    private static long getSignature(MessageTable table, int start, int end) {
+        if (end - start == 1) {
+            LogMessage message = table.getMessage(start);
+            return mix(message.getFingerprint() ^ mix(message.getDescriptionHash()));
+        }
+        long[] keys = new long[end - start];
+        for (int i = start; i < end; i++) {
+            LogMessage message = table.getMessage(i);
+            keys[i - start] = mix(message.getFingerprint() ^ mix(message.getDescriptionHash()));
+        }
+        Arrays.sort(keys);
+        long signature = keys.length;
+        for (int i = 0; i < keys.length; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                signature = signature * 31 + keys[i];
+            }
+        }
+        return mix(signature);
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * Every pair of consecutive versions containing the ID is checked.
+     *
+     * @param table
+     * @param idx
+     * @return the collision or <code>null</code> if no collision is found
+     */
+    private Difference findCollisions(MessageTable table, int idx) {
+        Difference collision = null;
+        int previous = -1;
+        for (int version = 0; version < table.getVersionCount(); version++) {
+            if (table.getEnd(idx, version) == table.getStart(idx, version)) {
+                // The ID not found in this version
+                continue;
+            }
+            if (previous != -1) {
+                Set<String> pairCollisions = getCollisions(table, idx, previous, version);
+                if (!pairCollisions.isEmpty()) {
+                    if (collision == null) {
+                        collision = Difference.collision(table, idx);
                     }
-                } else {
-                    collisions.add(entry.getKey());
+                    collision.addVersionCollisions(previous, version, pairCollisions);
                 }
             }
+            previous = version;
         }
-        return collisions;
+        return collision;
     }
 
-    private void removeSuppressedMember(JsonObject msg, String[] suppressionParts) {
-        JsonObject last = findLastJsonObject(msg, suppressionParts);
-        if (last != null) {
-            last.remove(suppressionParts[suppressionParts.length - 1]);
+    /**
+     * If there are several messages with the same ID, the messages are paired up first. Equal messages are matched using the fingerprint buckets.
+     * Each of the remaining messages is then paired with the remaining message from the other version with the least collisions. Finally, the
+     * messages left over if one version contains more messages are compared with the closest message from the other version.
+     *
+     * @param table
+     * @param idx
+     * @param previous
+     * @param current
+     * @return the union of collisions of all the pairs of messages
+     */
+    private Set<String> getCollisions(MessageTable table, int idx, int previous, int current) {
+        int previousStart = table.getStart(idx, previous);
+        int previousEnd = table.getEnd(idx, previous);
+        int currentStart = table.getStart(idx, current);
+        int currentEnd = table.getEnd(idx, current);
+        if (previousEnd - previousStart == 1 && currentEnd - currentStart == 1) {
+            // Very often there will be only one element in the list
+            return getCollisions(table.getMessage(currentStart), table.getMessage(previousStart));
+        }
+        // First match the equal messages
+        boolean[] previousMatched = new boolean[previousEnd - previousStart];
+        boolean[] currentMatched = new boolean[currentEnd - currentStart];
+        MessageBuckets buckets = new MessageBuckets(table, currentStart, currentEnd);
+        int unmatched = 0;
+        for (int i = previousStart; i < previousEnd; i++) {
+            int match = buckets.find(table.getMessage(i), currentMatched);
+            if (match != -1) {
+                previousMatched[i - previousStart] = true;
+                currentMatched[match - currentStart] = true;
+            } else {
+                unmatched++;
+            }
+        }
+        if (unmatched == 0 && previousEnd - previousStart == currentEnd - currentStart) {
+            return Collections.emptySet();
         }
+        Set<String> collisions = new HashSet<>();
+        // Then pair up the remaining messages greedily
+        for (int i = previousStart; i < previousEnd; i++) {
+            if (previousMatched[i - previousStart]) {
+                continue;
+            }
+            Set<String> best = null;
+            int bestMatch = -1;
+            for (int j = currentStart; j < currentEnd; j++) {
+                if (currentMatched[j - currentStart]) {
+                    continue;
+                }
+                Set<String> candidate = getCollisions(table.getMessage(j), table.getMessage(i));
+                if (best == null || candidate.size() < best.size()) {
+                    best = candidate;
+                    bestMatch = j;
+                }
+            }
+            if (bestMatch == -1) {
+                // No more messages in the current version
+                break;
+            }
+            previousMatched[i - previousStart] = true;
+            currentMatched[bestMatch - currentStart] = true;
+            collisions.addAll(best);
+        }
+        // The ID is used by more messages in one of the versions
+        addLeftoverCollisions(collisions, table, previousStart, previousEnd, previousMatched, currentStart, currentEnd);
+        addLeftoverCollisions(collisions, table, currentStart, currentEnd, currentMatched, previousStart, previousEnd);
+        return collisions;
     }
 
-    private JsonObject findLastJsonObject(JsonObject jsonObject, String[] suppressionParts) {
-        if (suppressionParts.length == 1) {
-            return jsonObject;
+    private void addLeftoverCollisions(Set<String> collisions, MessageTable table, int start, int end, boolean[] matched, int otherStart, int otherEnd) {
+        for (int i = start; i < end; i++) {
+            if (matched[i - start]) {
+                continue;
+            }
+            Set<String> best = null;
+            for (int j = otherStart; j < otherEnd; j++) {
+                Set<String> candidate = getCollisions(table.getMessage(j), table.getMessage(i));
+                if (best == null || candidate.size() < best.size()) {
+                    best = candidate;
+                }
+            }
+            collisions.addAll(best);
         }
-        JsonElement memberObject = jsonObject.get(suppressionParts[0]);
-        if (memberObject != null && memberObject.isJsonObject()) {
-            return findLastJsonObject(memberObject.getAsJsonObject(), Arrays.copyOfRange(suppressionParts, 1, suppressionParts.length));
+    }
+
+    private boolean areMessagesEqual(LogMessage msg1, LogMessage msg2) {
+        if (msg1.getFingerprint() == msg2.getFingerprint() && msg1.getDescriptionHash() == msg2.getDescriptionHash()
+                && Objects.equals(msg1.getProjectCode(), msg2.getProjectCode())) {
+            // Fast path - the fingerprints cover all the other members except for suppressions
+            // If the members are equal the suppressions may not make them different
+            return true;
         }
-        return null;
+        // Skip all suppressed members
+        // E.g. for @SuppressWarnings("weldlog:msg-value") we don't compare msgObj.msg.value
+        return msg1.contentEquals(msg2, msg1.getSuppressionMask() | msg2.getSuppressionMask());
     }
 
-    private boolean messageListContains(List<JsonObject> messages, JsonObject msg) {
-        for (JsonObject element : messages) {
-            if (areMessagesEqual(element, msg)) {
-                return true;
+    private Set<String> getCollisions(LogMessage msg1, LogMessage msg2) {
+        // Skip all suppressed members
+        int mask = msg1.getSuppressionMask() | msg2.getSuppressionMask();
+        Set<String> collisions = new HashSet<>();
+        addCollision(collisions, mask, SUPPRESS_PROJECT_CODE, PROJECT_CODE, msg1.getProjectCode(), msg2.getProjectCode());
+        if (msg1.hasMethodInfo(mask) != msg2.hasMethodInfo(mask)) {
+            collisions.add(METHOD_INFO);
+        } else {
+            addCollision(collisions, mask, SUPPRESS_SIGNATURE, METHOD_INFO + "-" + SIGNATURE, msg1.getSignature(), msg2.getSignature());
+            addCollision(collisions, mask, SUPPRESS_RETURN_TYPE, METHOD_INFO + "-" + RETURN_TYPE, msg1.getReturnType(), msg2.getReturnType());
+            addCollision(collisions, mask, SUPPRESS_INTERFACE, METHOD_INFO + "-" + INTERFACE, msg1.getInterfaceName(), msg2.getInterfaceName());
+        }
+        if (msg1.isLogMessage(mask) != msg2.isLogMessage(mask)) {
+            collisions.add(LOG_MESSAGE);
+        } else {
+            addCollision(collisions, mask, SUPPRESS_LEVEL, LOG_MESSAGE + "-" + LEVEL, msg1.getLevel(), msg2.getLevel());
+            addCollision(collisions, mask, SUPPRESS_LOGGING_CLASS, LOG_MESSAGE + "-" + LOGGING_CLASS, msg1.getLoggingClass(), msg2.getLoggingClass());
+        }
+        if (msg1.hasMessage(mask) != msg2.hasMessage(mask)) {
+            collisions.add(MESSAGE);
+        } else {
+            if (!isSuppressed(mask, SUPPRESS_ID) && (msg1.hasId() != msg2.hasId() || msg1.getId() != msg2.getId())) {
+                collisions.add(MESSAGE + "-" + ID);
             }
+            addCollision(collisions, mask, SUPPRESS_VALUE, MESSAGE + "-" + VALUE, msg1.getValue(), msg2.getValue());
+            addCollision(collisions, mask, SUPPRESS_FORMAT, MESSAGE + "-" + FORMAT, msg1.getFormat(), msg2.getFormat());
+        }
+        if (!isSuppressed(mask, SUPPRESS_DESCRIPTION) && msg1.getDescriptionHash() != msg2.getDescriptionHash()) {
+            // Descriptions may not be retained
+            collisions.add(DESCRIPTION);
+        }
+        return collisions;
+    }
+
+    private void addCollision(Set<String> collisions, int suppressionMask, int member, String path, String value1, String value2) {
+        if (!isSuppressed(suppressionMask, member) && !Objects.equals(value1, value2)) {
+            collisions.add(path);
         }
-        return false;
     }
 
-    private List<String> extractSuppressions(JsonObject msg) {
-        List<String> suppressionValues = new ArrayList<>();
-        JsonElement suppressions = msg.get(SUPPRESSIONS);
-        if (suppressions != null && suppressions.isJsonArray()) {
-            for (JsonElement suppression : suppressions.getAsJsonArray()) {
-                suppressionValues.add(suppression.getAsString());
+    private boolean messageListContains(MessageTable table, int start, int end, LogMessage msg) {
+        for (int i = start; i < end; i++) {
+            if (areMessagesEqual(table.getMessage(i), msg)) {
+                return true;
             }
         }
-        return suppressionValues;
+        return false;
     }
 
     private File initOutputFile(File outputFile) {
@@ -496,11 +1648,162 @@ public class LogMessageIndexDiff {
         return outputFile;
     }
 
-    private JsonObject wrap(String version, JsonElement element) {
-        JsonObject versionAware = new JsonObject();
-        versionAware.add(VERSION, Json.wrapPrimitive(version));
-        versionAware.add(VALUE, element);
-        return versionAware;
+    /**
+     * Messages of a single version slot bucketed by fingerprint. Messages without suppressions are only compared with the messages from the same
+     * bucket - if two such messages are equal, their fingerprints must be equal as well. Messages with suppressions are compared with all the
+     * messages.
+     */
+    private class MessageBuckets {
+
+        private final MessageTable table;
+
+        private final int start;
+
+        private final int end;
+
+        // Open addressing, positions + 1, 0 means an empty slot
+        private final int[] slots;
+
+        private final int[] suppressing;
+
+        private int suppressingCount;
+
+        MessageBuckets(MessageTable table, int start, int end) {
+            this.table = table;
+            this.start = start;
+            this.end = end;
+            this.slots = new int[Integer.highestOneBit((end - start) * 2 - 1) << 1];
+            this.suppressing = new int[end - start];
+            for (int i = start; i < end; i++) {
+                LogMessage message = table.getMessage(i);
+                if (message.getSuppressionMask() != 0) {
+                    suppressing[suppressingCount++] = i;
+                } else {
+                    int slot = slot(message.getFingerprint());
+                    while (slots[slot] != 0) {
+                        slot = (slot + 1) & (slots.length - 1);
+                    }
+                    slots[slot] = i + 1;
+                }
+            }
+        }
+
+        boolean contains(LogMessage msg) {
+            return find(msg, null) != -1;
+        }
+
+        /**
+         *
+         * @param msg
+         * @param matched the positions which should be skipped, may be null
+         * @return the position of an equal message or -1
+         */
+        int find(LogMessage msg, boolean[] matched) {
+            if (msg.getSuppressionMask() != 0) {
+                for (int i = start; i < end; i++) {
+                    if (!isMatched(matched, i) && areMessagesEqual(table.getMessage(i), msg)) {
+                        return i;
+                    }
+                }
+                return -1;
+            }
+            for (int slot = slot(msg.getFingerprint()); slots[slot] != 0; slot = (slot + 1) & (slots.length - 1)) {
+                int position = slots[slot] - 1;
+                LogMessage candidate = table.getMessage(position);
+                if (!isMatched(matched, position) && candidate.getFingerprint() == msg.getFingerprint() && areMessagesEqual(candidate, msg)) {
+                    return position;
+                }
+            }
+            for (int i = 0; i < suppressingCount; i++) {
+                if (!isMatched(matched, suppressing[i]) && areMessagesEqual(table.getMessage(suppressing[i]), msg)) {
+                    return suppressing[i];
+                }
+            }
+            return -1;
+        }
+
+        private boolean isMatched(boolean[] matched, int position) {
+            return matched != null && matched[position - start];
+        }
+
+        private int slot(long fingerprint) {
+            long hash = fingerprint * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & (slots.length - 1);
+        }
+
+    }
+
+    /**
+     * Splits the range of IDs until the range contains at most {@code PARTITION_SIZE} IDs.
+     */
+    private class FindDifferencesTask extends RecursiveTask<List<Difference>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean detectCollisionsOnly;
+
+        private final MessageTable table;
+
+        private final int from;
+
+        private final int to;
+
+        FindDifferencesTask(boolean detectCollisionsOnly, MessageTable table, int from, int to) {
+            this.detectCollisionsOnly = detectCollisionsOnly;
+            this.table = table;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Difference> compute() {
+            if (to - from <= PARTITION_SIZE) {
+                return findDifferences(detectCollisionsOnly, table, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            FindDifferencesTask left = new FindDifferencesTask(detectCollisionsOnly, table, from, middle);
+            left.fork();
+            List<Difference> right = new FindDifferencesTask(detectCollisionsOnly, table, middle, to).compute();
+            List<Difference> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+
+    }
+
+    /**
+     * Splits the range of IDs until the range contains at most {@code PARTITION_SIZE} IDs.
+     */
+    private class FindVersionClassesTask extends RecursiveTask<List<VersionClasses>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final MessageTable table;
+
+        private final int from;
+
+        private final int to;
+
+        FindVersionClassesTask(MessageTable table, int from, int to) {
+            this.table = table;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<VersionClasses> compute() {
+            if (to - from <= PARTITION_SIZE) {
+                return findVersionClasses(table, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            FindVersionClassesTask left = new FindVersionClassesTask(table, from, middle);
+            left.fork();
+            List<VersionClasses> right = new FindVersionClassesTask(table, middle, to).compute();
+            List<VersionClasses> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+
     }
 
 }
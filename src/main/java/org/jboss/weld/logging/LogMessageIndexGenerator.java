@@ -16,41 +16,41 @@
  */
 package org.jboss.weld.logging;
 
-import static org.jboss.weld.logging.Strings.ARTIFACT;
-import static org.jboss.weld.logging.Strings.DESCRIPTION;
+import static org.jboss.weld.logging.Strings.FORMAT;
+import static org.jboss.weld.logging.Strings.HASH;
 import static org.jboss.weld.logging.Strings.ID;
 import static org.jboss.weld.logging.Strings.INTERFACE;
-import static org.jboss.weld.logging.Strings.LOG_MESSAGE;
+import static org.jboss.weld.logging.Strings.LEVEL;
+import static org.jboss.weld.logging.Strings.LOGGING_CLASS;
 import static org.jboss.weld.logging.Strings.LOG_MESSAGE_CLASS_NAME;
-import static org.jboss.weld.logging.Strings.MESSAGE;
 import static org.jboss.weld.logging.Strings.MESSAGES;
 import static org.jboss.weld.logging.Strings.MESSAGE_CLASS_NAME;
-import static org.jboss.weld.logging.Strings.METHOD_INFO;
 import static org.jboss.weld.logging.Strings.OPT_ARTIFACT;
+import static org.jboss.weld.logging.Strings.OPT_BINARY_INDEX;
+import static org.jboss.weld.logging.Strings.OPT_FRAGMENTS_DIR;
 import static org.jboss.weld.logging.Strings.OPT_OUTPUT_FILE;
 import static org.jboss.weld.logging.Strings.OPT_PROJECT_VERSION;
-import static org.jboss.weld.logging.Strings.PROJECT_CODE;
-import static org.jboss.weld.logging.Strings.RETURN_TYPE;
-import static org.jboss.weld.logging.Strings.SIGNATURE;
 import static org.jboss.weld.logging.Strings.SUPPRESS_WARNINGS_CLASS_NAME;
-import static org.jboss.weld.logging.Strings.SUPPRESSIONS;
 import static org.jboss.weld.logging.Strings.SUPPRESS_WARNINGS_PREFIX;
-import static org.jboss.weld.logging.Strings.TOTAL;
 import static org.jboss.weld.logging.Strings.UNKNOWN;
 import static org.jboss.weld.logging.Strings.VALUE;
-import static org.jboss.weld.logging.Strings.VERSION;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
@@ -65,10 +65,13 @@ import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
 import javax.tools.Diagnostic.Kind;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * This annotation processor generates a JSON index of log messages (i.e. methods annotated with {@link Strings#MESSAGE_CLASS_NAME}) found in the compilation
@@ -94,17 +97,36 @@ import com.google.gson.JsonObject;
  *              "value" : "This is the real message: {0}",
  *              "format" : "MESSAGE_FORMAT"
  *          },
- *          "desc" : "Optional description taken from javadoc...",
- *          "suppressions" : ["weldlog:msg-value"]
+ *          "suppressions" : ["weldlog:msg-value"],
+ *          "desc" : "Optional description taken from javadoc..."
  *      }
  *  ]
  * }
  * </pre>
  *
+ * <p>
+ * If the {@link Strings#OPT_FRAGMENTS_DIR} option is set, the processor works in the incremental mode. The messages of every logger interface compiled in
+ * the current compilation are stored in a separate index fragment (one file per interface). Every fragment contains a hash of the messages taken from
+ * the interface so that the fragment of an unchanged interface is not rewritten. The final index is then merged from all the fragments whose interfaces
+ * are still present. This way an incremental compilation which only recompiles a single logger interface still produces a complete index.
+ * </p>
+ *
+ * <p>
+ * Note that the index and the fragments are not written through the {@link javax.annotation.processing.Filer}. The location of the index is
+ * configurable, and the fragments of the previous compilations must be read and deleted, which the Filer does not support. Therefore, the processor is
+ * not registered as a Gradle incremental annotation processor.
+ * </p>
+ *
+ * <p>
+ * If the {@link Strings#OPT_BINARY_INDEX} option is set to <code>true</code>, a compact binary index (see {@link BinaryIndex}) is also written next to
+ * the JSON index. The tools detect the format automatically - if a directory of index files contains both formats of the same index, only the
+ * binary index is used.
+ * </p>
+ *
  * @author Martin Kouba
  */
 @SupportedAnnotationTypes({ MESSAGE_CLASS_NAME })
-@SupportedOptions({ OPT_PROJECT_VERSION, OPT_OUTPUT_FILE, OPT_ARTIFACT })
+@SupportedOptions({ OPT_PROJECT_VERSION, OPT_OUTPUT_FILE, OPT_ARTIFACT, OPT_FRAGMENTS_DIR, OPT_BINARY_INDEX })
 public class LogMessageIndexGenerator extends AbstractProcessor {
 
     private File outputFile;
@@ -113,7 +135,15 @@ public class LogMessageIndexGenerator extends AbstractProcessor {
 
     private String artifact;
 
-    private List<LogMessage> logMessages = new ArrayList<LogMessage>();
+    private File fragmentsDir;
+
+    private boolean binaryIndex;
+
+    // Interface name -> log messages declared on the interface
+    private Map<String, List<LogMessage>> logMessages = new TreeMap<String, List<LogMessage>>();
+
+    // Names of all types compiled in the current compilation
+    private Set<String> compiledTypes = new HashSet<String>();
 
     @Override
     public SourceVersion getSupportedSourceVersion() {
@@ -132,18 +162,29 @@ public class LogMessageIndexGenerator extends AbstractProcessor {
             artifact = UNKNOWN;
         }
         outputFile = initOutputFile(processingEnv.getOptions().get(OPT_OUTPUT_FILE));
+        binaryIndex = Boolean.parseBoolean(processingEnv.getOptions().get(OPT_BINARY_INDEX));
+        String fragmentsDirPath = processingEnv.getOptions().get(OPT_FRAGMENTS_DIR);
+        if (fragmentsDirPath != null) {
+            fragmentsDir = new File(fragmentsDirPath);
+        }
     }
 
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
         try {
+            if (fragmentsDir != null) {
+                collectTypeNames(ElementFilter.typesIn(roundEnv.getRootElements()));
+            }
             for (TypeElement annotation : annotations) {
                 for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
                     processElement(element);
                 }
             }
-            if (roundEnv.processingOver() && logMessages.size() > 0) {
-                createIndex();
+            if (roundEnv.processingOver()) {
+                List<LogMessage> messages = fragmentsDir != null ? mergeFragments() : getAllMessages(logMessages);
+                if (messages.size() > 0) {
+                    createIndex(messages);
+                }
             }
             return true;
         } catch (Throwable e) {
@@ -180,17 +221,13 @@ public class LogMessageIndexGenerator extends AbstractProcessor {
             }
         }
 
-        JsonObject json = new JsonObject();
-        json.add(PROJECT_CODE, Json.wrapPrimitive(projectCode));
-        // -1 represents the default value of Message.id()
-        Integer id = -1;
-
-        // Method info
-        JsonObject methodInfo = new JsonObject();
-        methodInfo.add(SIGNATURE, Json.wrapPrimitive(createMethodSignature(executableElement)));
-        methodInfo.add(RETURN_TYPE, Json.wrapPrimitive(executableElement.getReturnType().toString()));
-        methodInfo.add(INTERFACE, Json.wrapPrimitive(enclosingElement.toString()));
-        json.add(METHOD_INFO, methodInfo);
+        boolean logMessage = false;
+        String level = null;
+        String loggingClass = null;
+        Integer id = null;
+        String value = null;
+        String format = null;
+        List<String> suppressions = null;
 
         for (AnnotationMirror annotationMirror : processingEnv.getElementUtils().getAllAnnotationMirrors(executableElement)) {
 
@@ -200,36 +237,41 @@ public class LogMessageIndexGenerator extends AbstractProcessor {
             // processingEnv.getElementUtils().getElementValuesWithDefaults(annotationMirror);
 
             if (annotationType.equals(LOG_MESSAGE_CLASS_NAME)) {
-                JsonObject logMessage = new JsonObject();
+                logMessage = true;
                 for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotationParameters.entrySet()) {
-                    logMessage.add(entry.getKey().getSimpleName().toString(), Json.wrapPrimitive(entry.getValue()));
+                    String name = entry.getKey().getSimpleName().toString();
+                    if (name.equals(LEVEL)) {
+                        level = entry.getValue().getValue().toString();
+                    } else if (name.equals(LOGGING_CLASS)) {
+                        loggingClass = entry.getValue().getValue().toString();
+                    }
                 }
-                json.add(LOG_MESSAGE, logMessage);
             } else if (annotationType.equals(MESSAGE_CLASS_NAME)) {
-                JsonObject message = new JsonObject();
                 for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotationParameters.entrySet()) {
-                    message.add(entry.getKey().getSimpleName().toString(), Json.wrapPrimitive(entry.getValue()));
-                    if (entry.getKey().getSimpleName().toString().equals(ID)) {
+                    String name = entry.getKey().getSimpleName().toString();
+                    if (name.equals(ID)) {
                         id = (Integer) entry.getValue().getValue();
+                    } else if (name.equals(VALUE)) {
+                        value = entry.getValue().getValue().toString();
+                    } else if (name.equals(FORMAT)) {
+                        format = entry.getValue().getValue().toString();
                     }
                 }
-                json.add(MESSAGE, message);
             } else if (annotationType.equals(SUPPRESS_WARNINGS_CLASS_NAME)) {
                 // Also store @SuppressWarnings values with "weldlog:" prefix so that we're able to ignore expected collisions
-                JsonArray suppressions = new JsonArray();
+                suppressions = new ArrayList<String>();
                 for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotationParameters.entrySet()) {
                     if (entry.getKey().getSimpleName().toString().equals(VALUE)) {
                         @SuppressWarnings("unchecked")
                         List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) entry.getValue().getValue();
                         for (AnnotationValue annotationValue : values) {
-                            String value = annotationValue.getValue().toString();
-                            if(value.startsWith(SUPPRESS_WARNINGS_PREFIX)) {
-                                suppressions.add(Json.wrapPrimitive(value));
+                            String suppression = annotationValue.getValue().toString();
+                            if(suppression.startsWith(SUPPRESS_WARNINGS_PREFIX)) {
+                                suppressions.add(suppression);
                             }
                         }
                     }
                 }
-                json.add(SUPPRESSIONS, suppressions);
             }
         }
 
@@ -240,12 +282,114 @@ public class LogMessageIndexGenerator extends AbstractProcessor {
             if (atIdx != -1) {
                 comment = comment.substring(0, atIdx).trim();
             }
-            json.add(DESCRIPTION, Json.wrapPrimitive(comment));
         }
-        logMessages.add(new LogMessage(id, json));
+        List<LogMessage> interfaceMessages = logMessages.get(enclosingElement.toString());
+        if (interfaceMessages == null) {
+            interfaceMessages = new ArrayList<LogMessage>();
+            logMessages.put(enclosingElement.toString(), interfaceMessages);
+        }
+        interfaceMessages.add(new LogMessage(projectCode, createMethodSignature(executableElement), executableElement.getReturnType().toString(),
+                enclosingElement.toString(), logMessage, level, loggingClass, id, value, format, suppressions, comment));
+    }
+
+    private void collectTypeNames(Iterable<TypeElement> types) {
+        for (TypeElement type : types) {
+            compiledTypes.add(type.getQualifiedName().toString());
+            collectTypeNames(ElementFilter.typesIn(type.getEnclosedElements()));
+        }
+    }
+
+    /**
+     * Updates the fragments of all the interfaces compiled in the current compilation and merges all the valid fragments found in the fragments
+     * directory.
+     *
+     * @return the merged list of messages
+     * @throws IOException
+     */
+    private List<LogMessage> mergeFragments() throws IOException {
+        if (!fragmentsDir.exists() && !fragmentsDir.mkdirs() && !fragmentsDir.isDirectory()) {
+            throw new IOException("Fragments directory could not be created: " + fragmentsDir);
+        }
+        Map<String, List<LogMessage>> merged = new TreeMap<String, List<LogMessage>>();
+        for (Map.Entry<String, List<LogMessage>> entry : logMessages.entrySet()) {
+            writeFragment(entry.getKey(), entry.getValue());
+            merged.put(entry.getKey(), entry.getValue());
+        }
+        File[] fragmentFiles = fragmentsDir.listFiles();
+        if (fragmentFiles != null) {
+            for (File fragmentFile : fragmentFiles) {
+                if (!fragmentFile.isFile() || !fragmentFile.getName().endsWith(".json")) {
+                    continue;
+                }
+                String interfaceName = fragmentFile.getName().substring(0, fragmentFile.getName().length() - ".json".length());
+                if (merged.containsKey(interfaceName)) {
+                    continue;
+                }
+                if (compiledTypes.contains(interfaceName) || processingEnv.getElementUtils().getTypeElement(interfaceName) == null) {
+                    // The interface was recompiled but does not declare any message anymore or it does not exist at all
+                    if (!fragmentFile.delete()) {
+                        throw new IOException("Obsolete fragment could not be deleted: " + fragmentFile);
+                    }
+                    continue;
+                }
+                merged.put(interfaceName, readFragment(fragmentFile));
+            }
+        }
+        return getAllMessages(merged);
     }
 
-    private void createIndex() throws IOException {
+    private void writeFragment(String interfaceName, List<LogMessage> messages) throws IOException {
+        JsonArray messagesArray = new JsonArray();
+        for (LogMessage message : messages) {
+            messagesArray.add(message.toJson());
+        }
+        String hash = hash(messagesArray.toString());
+        File fragmentFile = new File(fragmentsDir, interfaceName + ".json");
+        if (fragmentFile.isFile()) {
+            JsonElement hashElement = Json.readJsonElementFromFile(fragmentFile).getAsJsonObject().get(HASH);
+            if (hashElement != null && hash.equals(hashElement.getAsString())) {
+                // The interface has not changed
+                return;
+            }
+        }
+        JsonObject fragment = new JsonObject();
+        fragment.add(INTERFACE, Json.wrapPrimitive(interfaceName));
+        fragment.add(HASH, Json.wrapPrimitive(hash));
+        fragment.add(MESSAGES, messagesArray);
+        Json.writeJsonElementToFile(fragment, fragmentFile);
+    }
+
+    private List<LogMessage> readFragment(File fragmentFile) throws IOException {
+        List<LogMessage> messages = new ArrayList<LogMessage>();
+        for (JsonElement messageElement : Json.readJsonElementFromFile(fragmentFile).getAsJsonObject().get(MESSAGES).getAsJsonArray()) {
+            messages.add(LogMessage.fromJson(messageElement.getAsJsonObject()));
+        }
+        return messages;
+    }
+
+    private String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<LogMessage> getAllMessages(Map<String, List<LogMessage>> interfaceMessages) {
+        List<LogMessage> messages = new ArrayList<LogMessage>();
+        for (List<LogMessage> value : interfaceMessages.values()) {
+            messages.addAll(value);
+        }
+        return messages;
+    }
+
+    private void createIndex(List<LogMessage> logMessages) throws IOException {
         if (!outputFile.exists()) {
             try {
                 File parent = outputFile.getParentFile();
@@ -264,10 +408,6 @@ public class LogMessageIndexGenerator extends AbstractProcessor {
         if (!outputFile.exists() || !outputFile.isFile() || !outputFile.canWrite()) {
             processingEnv.getMessager().printMessage(Kind.ERROR, "The output index file does no exists, is not a file or is not writeable: " + outputFile);
         }
-        JsonObject data = new JsonObject();
-        data.add(VERSION, Json.wrapPrimitive(version));
-        data.add(ARTIFACT, Json.wrapPrimitive(artifact));
-        data.add(TOTAL, Json.wrapPrimitive(logMessages.size()));
         // Sort messages by id
         Collections.sort(logMessages, new Comparator<LogMessage>() {
             @Override
@@ -275,12 +415,16 @@ public class LogMessageIndexGenerator extends AbstractProcessor {
                 return Integer.compare(o1.getId(), o2.getId());
             }
         });
-        JsonArray messages = new JsonArray();
-        for (LogMessage message : logMessages) {
-            messages.add(message.getJson());
+        Index index = new Index(version, artifact, logMessages.size(), outputFile.toPath().toString(), logMessages);
+        // Stream the messages directly to the file so that we don't need to build the whole JSON tree
+        try (JsonWriter writer = Json.openJsonWriter(outputFile)) {
+            index.write(writer);
+        }
+        if (binaryIndex) {
+            File binaryFile = getBinaryIndexFile();
+            BinaryIndex.write(index, binaryFile);
+            processingEnv.getMessager().printMessage(Kind.NOTE, String.format("Binary log message index generated [file: %s]", binaryFile));
         }
-        data.add(MESSAGES, messages);
-        Json.writeJsonElementToFile(data, outputFile);
         processingEnv.getMessager().printMessage(Kind.NOTE, String.format("Log message index generated [size: %s, file: %s]", logMessages.size(), outputFile));
     }
 
@@ -310,6 +454,14 @@ public class LogMessageIndexGenerator extends AbstractProcessor {
         return builder.toString();
     }
 
+    private File getBinaryIndexFile() {
+        String name = outputFile.getName();
+        if (name.endsWith(".json")) {
+            name = name.substring(0, name.length() - ".json".length());
+        }
+        return new File(outputFile.getAbsoluteFile().getParentFile(), name + BinaryIndex.FILE_SUFFIX);
+    }
+
     private File initOutputFile(String outputFilePath) {
         if (outputFilePath == null) {
             outputFilePath = org.jboss.weld.logging.Files.getWorkingDirectory() + "target" + System.getProperty("file.separator") + "log-msg-idx_" + version
@@ -318,34 +470,4 @@ public class LogMessageIndexGenerator extends AbstractProcessor {
         return new File(outputFilePath);
     }
 
-    /**
-     * Log message wrapper.
-     *
-     * <p>
-     * Note that messages don't need to have the ID specified (0) or may inherit the ID from another message with the same name (-1).
-     * </p>
-     *
-     * @author Martin Kouba
-     */
-    static class LogMessage {
-
-        private final int id;
-
-        private final JsonObject json;
-
-        LogMessage(int id, JsonObject json) {
-            this.id = id;
-            this.json = json;
-        }
-
-        public int getId() {
-            return id;
-        }
-
-        public JsonObject getJson() {
-            return json;
-        }
-
-    }
-
 }
@@ -16,17 +16,49 @@
  */
 package org.jboss.weld.logging;
 
+import static org.jboss.weld.logging.Strings.ARTIFACT;
+import static org.jboss.weld.logging.Strings.DIFFERENCES;
+import static org.jboss.weld.logging.Strings.FINGERPRINT;
+import static org.jboss.weld.logging.Strings.ID;
 import static org.jboss.weld.logging.Strings.INDEXES;
+import static org.jboss.weld.logging.Strings.MATRIX;
+import static org.jboss.weld.logging.Strings.MESSAGE;
+import static org.jboss.weld.logging.Strings.MESSAGES;
+import static org.jboss.weld.logging.Strings.PROJECT_CODE;
+import static org.jboss.weld.logging.Strings.TOTAL;
+import static org.jboss.weld.logging.Strings.VALUE;
+import static org.jboss.weld.logging.Strings.VALUES;
 import static org.jboss.weld.logging.Strings.VERSION;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import org.trimou.Mustache;
 import org.trimou.engine.MustacheEngine;
@@ -34,13 +66,17 @@ import org.trimou.engine.MustacheEngineBuilder;
 import org.trimou.engine.config.EngineConfigurationKey;
 import org.trimou.engine.locator.ClassPathTemplateLocator;
 import org.trimou.engine.resolver.MapResolver;
-import org.trimou.engine.resolver.ReflectionResolver;
 import org.trimou.engine.resolver.ThisResolver;
 import org.trimou.gson.converter.GsonValueConverter;
-import org.trimou.gson.resolver.JsonElementResolver;
 import org.trimou.handlebars.HelpersBuilder;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.internal.Streams;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  *
@@ -48,6 +84,74 @@ import com.google.gson.JsonObject;
  */
 public class LogMessageReport {
 
+    static final String INDEX_TEMPLATE = "index.html";
+
+    static final String DIFF_TEMPLATE = "diff.html";
+
+    static final String MATRIX_TEMPLATE = "matrix.html";
+
+    static final String CATALOG_TEMPLATE = "catalog.html";
+
+    static final String CATALOG_FILE_NAME = "catalog.html";
+
+    static final String INDEX_PAGE_TEMPLATE = "index-page.html";
+
+    static final String DIFF_PAGE_TEMPLATE = "diff-page.html";
+
+    static final String OVERVIEW_TEMPLATE = "overview.html";
+
+    static final String LITE_TEMPLATE = "lite.html";
+
+    // Partials
+    private static final String[] PARTIALS = { "msg-source.html", "page-nav.html", "styles.css" };
+
+    private final MustacheEngine engine;
+
+    private final Mustache indexTemplate;
+
+    private final Mustache diffTemplate;
+
+    private final Mustache matrixTemplate;
+
+    private final Mustache catalogTemplate;
+
+    private final Mustache indexPageTemplate;
+
+    private final Mustache diffPageTemplate;
+
+    private final Mustache overviewTemplate;
+
+    private final Mustache liteTemplate;
+
+    /**
+     * The engine is built and all the templates are compiled eagerly. The instance is thread-safe and should be reused to render multiple reports.
+     */
+    public LogMessageReport() {
+        this.engine = MustacheEngineBuilder
+                .newBuilder()
+                .omitServiceLoaderConfigurationExtensions()
+                .setProperty(EngineConfigurationKey.PRECOMPILE_ALL_TEMPLATES, false)
+                .addTemplateLocator(ClassPathTemplateLocator.builder(1).setRootPath("templates").build())
+                .addResolver(new ThisResolver())
+                .addResolver(new MapResolver())
+                .addResolver(new JsonResolver())
+                .registerHelpers(HelpersBuilder.all().build())
+                .addValueConverter(new GsonValueConverter())
+                .build();
+        this.indexTemplate = getMustache(INDEX_TEMPLATE);
+        this.diffTemplate = getMustache(DIFF_TEMPLATE);
+        this.matrixTemplate = getMustache(MATRIX_TEMPLATE);
+        this.catalogTemplate = getMustache(CATALOG_TEMPLATE);
+        this.indexPageTemplate = getMustache(INDEX_PAGE_TEMPLATE);
+        this.diffPageTemplate = getMustache(DIFF_PAGE_TEMPLATE);
+        this.overviewTemplate = getMustache(OVERVIEW_TEMPLATE);
+        this.liteTemplate = getMustache(LITE_TEMPLATE);
+        // The partials are cached by the engine
+        for (String partial : PARTIALS) {
+            getMustache(partial);
+        }
+    }
+
     public static void main(String[] args) {
 
         if (args.length < 1) {
@@ -55,6 +159,50 @@ public class LogMessageReport {
             return;
         }
 
+        if ("-d".equals(args[0])) {
+            File outputDirectory = null;
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            List<File> indexFiles = new ArrayList<File>();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("-d".equals(arg)) {
+                    if (i + 1 >= args.length) {
+                        throw new IllegalArgumentException("-d switch requires the report directory");
+                    }
+                    outputDirectory = new File(args[++i]);
+                } else if ("-p".equals(arg)) {
+                    if (i + 1 >= args.length) {
+                        throw new IllegalArgumentException("-p switch requires the number of threads");
+                    }
+                    parallelism = Integer.parseInt(args[++i]);
+                } else {
+                    addInputFiles(arg, indexFiles);
+                }
+            }
+            new LogMessageReport().createReportFiles(indexFiles, outputDirectory, parallelism);
+            return;
+        }
+
+        if ("-s".equals(args[0])) {
+            if (args.length < 3) {
+                printUsage();
+                return;
+            }
+            File indexFile = new File(args[2]);
+            File outputDirectory = args.length > 3 ? new File(args[3]) : indexFile.getAbsoluteFile().getParentFile();
+            new LogMessageReport().createShardedReport(indexFile, outputDirectory, Integer.parseInt(args[1]));
+            return;
+        }
+
+        if ("-l".equals(args[0])) {
+            if (args.length < 2) {
+                printUsage();
+                return;
+            }
+            new LogMessageReport().createLiteReportFile(new File(args[1]), args.length > 2 ? new File(args[2]) : null);
+            return;
+        }
+
         File indexFile = new File(args[0]);
         File reportFile = null;
         if (args.length > 1) {
@@ -67,6 +215,55 @@ public class LogMessageReport {
 
     private static void printUsage() {
         System.out.println("Usage: java -cp weld-logging-tools-shaded.jar org.jboss.weld.logging.LogMessageReport DIFF_INDEX_FILE [REPORT_FILE]");
+        System.out.println("       java -cp weld-logging-tools-shaded.jar org.jboss.weld.logging.LogMessageReport -d REPORT_DIR [-p threads] FILEORDIRORGLOB...");
+        System.out.println("       java -cp weld-logging-tools-shaded.jar org.jboss.weld.logging.LogMessageReport -s PAGE_SIZE DIFF_INDEX_FILE [REPORT_DIR]");
+        System.out.println("       java -cp weld-logging-tools-shaded.jar org.jboss.weld.logging.LogMessageReport -l DIFF_INDEX_FILE [REPORT_FILE]");
+    }
+
+    /**
+     * A glob is matched against the paths of all the files in the directory which precedes the first glob segment, e.g. for
+     * <code>archive/&#42;&#42;/diff-&#42;.json</code> the <code>archive</code> directory is searched.
+     *
+     * @param input a file, a directory or a glob
+     * @param files
+     */
+    static void addInputFiles(String input, List<File> files) {
+        File file = new File(input);
+        if (file.exists()) {
+            files.add(file);
+            return;
+        }
+        if (!input.matches(".*[*?\\[{].*")) {
+            throw new IllegalArgumentException("Unable to read the index file: " + input);
+        }
+        // Find the base directory
+        Path base = Paths.get("");
+        for (Path segment : Paths.get(input)) {
+            if (segment.toString().matches(".*[*?\\[{].*")) {
+                break;
+            }
+            base = base.resolve(segment);
+        }
+        if (Paths.get(input).isAbsolute()) {
+            base = Paths.get(input).getRoot().resolve(base);
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + input);
+        List<File> matched = new ArrayList<File>();
+        try (Stream<Path> paths = Files.walk(base.toString().isEmpty() ? Paths.get(".") : base)) {
+            for (Iterator<Path> iterator = paths.iterator(); iterator.hasNext();) {
+                Path path = iterator.next();
+                if (base.toString().isEmpty()) {
+                    path = Paths.get(".").relativize(path);
+                }
+                if (Files.isRegularFile(path) && matcher.matches(path)) {
+                    matched.add(path.toFile());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to find the files matching: " + input, e);
+        }
+        Collections.sort(matched);
+        files.addAll(matched);
     }
 
     /**
@@ -75,6 +272,16 @@ public class LogMessageReport {
      * @param writer
      */
     public void generate(File indexFile, Writer writer) {
+        render(indexFile, writer);
+    }
+
+    /**
+     *
+     * @param indexFile
+     * @param writer
+     * @return the rendered JSON
+     */
+    private JsonObject render(File indexFile, Writer writer) {
 
         if (!indexFile.exists() || !indexFile.canRead()) {
             throw new IllegalArgumentException("Unable to read the index file: " + indexFile);
@@ -83,25 +290,14 @@ public class LogMessageReport {
         try {
 
             JsonObject json = Json.readJsonElementFromFile(indexFile).getAsJsonObject();
-
-            MustacheEngine engine = MustacheEngineBuilder
-                    .newBuilder()
-                    .omitServiceLoaderConfigurationExtensions()
-                    .setProperty(EngineConfigurationKey.PRECOMPILE_ALL_TEMPLATES, false)
-                    .addTemplateLocator(ClassPathTemplateLocator.builder(1).setRootPath("templates").build())
-                    .addResolver(new ThisResolver())
-                    .addResolver(new MapResolver())
-                    .addResolver(new JsonElementResolver())
-                    .addResolver(new ReflectionResolver())
-                    .registerHelpers(HelpersBuilder.all().build())
-                    .addValueConverter(new GsonValueConverter())
-                    .build();
             Mustache mustache;
 
             if (json.has(VERSION)) {
-                mustache = engine.getMustache("index.html");
+                mustache = indexTemplate;
+            } else if (json.has(MATRIX)) {
+                mustache = matrixTemplate;
             } else if (json.has(INDEXES)) {
-                mustache = engine.getMustache("diff.html");
+                mustache = diffTemplate;
             } else {
                 throw new IllegalStateException("Unsupported index file format: " + indexFile);
             }
@@ -111,6 +307,7 @@ public class LogMessageReport {
             data.put("indexFile", indexFile.toPath().toString());
             data.put("timestamp", new Date());
             mustache.render(writer, data);
+            return json;
 
         } catch (IOException e) {
             throw new IllegalStateException("Unable to parse the index file: " + indexFile, e);
@@ -118,16 +315,339 @@ public class LogMessageReport {
     }
 
     /**
+     * Renders a report for every index file.
+     *
+     * @param indexFiles
+     * @param outputDirectory
+     * @return the list of report files
+     * @see #createReportFiles(List, File, int)
+     */
+    public List<File> createReportFiles(List<File> indexFiles, File outputDirectory) {
+        return createReportFiles(indexFiles, outputDirectory, 1);
+    }
+
+    /**
+     * Renders a report for every index or diff file. The reports are rendered concurrently, all the threads share the compiled templates. A
+     * directory is replaced with all the JSON files it contains. The report file name is derived from the index file name, see also
+     * {@link #getDefaultReportFile(File)}.
+     *
+     * <p>
+     * If the output directory is set, a number is appended to a report file name which is not unique and the catalog linking all the reports is
+     * written to {@value #CATALOG_FILE_NAME}.
+     * </p>
+     *
+     * @param indexFiles
+     * @param outputDirectory the directory the reports are written to, if <code>null</code> every report is written to the directory of its index
+     *        file and no catalog is written
+     * @param parallelism the maximum number of threads used to render the reports
+     * @return the list of report files
+     */
+    public List<File> createReportFiles(List<File> indexFiles, File outputDirectory, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be greater than zero: " + parallelism);
+        }
+        if (outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IllegalStateException("Unable to create the output directory: " + outputDirectory);
+        }
+        List<File> files = new ArrayList<File>();
+        for (File indexFile : indexFiles) {
+            if (indexFile.isDirectory()) {
+                // Skip other JSON files, e.g. the summary written by the batch diff
+                File[] jsonFiles = indexFile.listFiles(new FileFilter() {
+                    @Override
+                    public boolean accept(File pathname) {
+                        return pathname.isFile() && !pathname.isHidden() && pathname.getName().endsWith(".json") && isReportInput(pathname);
+                    }
+                });
+                Arrays.sort(jsonFiles);
+                Collections.addAll(files, jsonFiles);
+            } else {
+                files.add(indexFile);
+            }
+        }
+        final List<File> reportFiles = new ArrayList<File>(files.size());
+        Set<String> names = new HashSet<String>();
+        for (File file : files) {
+            File reportFile = getDefaultReportFile(file);
+            if (outputDirectory != null) {
+                String name = reportFile.getName();
+                for (int i = 2; !names.add(name) || name.equals(CATALOG_FILE_NAME); i++) {
+                    name = reportFile.getName().substring(0, reportFile.getName().length() - 5) + "-" + i + ".html";
+                }
+                reportFile = new File(outputDirectory, name);
+            }
+            reportFiles.add(reportFile);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, files.size())));
+        List<Map<String, Object>> entries = new ArrayList<Map<String, Object>>();
+        try {
+            List<Future<Map<String, Object>>> futures = new ArrayList<Future<Map<String, Object>>>();
+            for (int i = 0; i < files.size(); i++) {
+                final File indexFile = files.get(i);
+                final File reportFile = reportFiles.get(i);
+                futures.add(executor.submit(new Callable<Map<String, Object>>() {
+                    @Override
+                    public Map<String, Object> call() {
+                        JsonObject json = writeReportFile(reportFile, new ReportRenderer<JsonObject>() {
+                            @Override
+                            public JsonObject render(Writer writer) {
+                                return LogMessageReport.this.render(indexFile, writer);
+                            }
+                        });
+                        return newCatalogEntry(json, indexFile, reportFile);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    entries.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Unable to create the report for: " + files.get(i), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating the reports", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (outputDirectory != null) {
+            File catalogFile = new File(outputDirectory, CATALOG_FILE_NAME);
+            try (Writer writer = Files.newBufferedWriter(catalogFile.toPath(), Charset.forName("UTF-8"))) {
+                Map<String, Object> data = new HashMap<String, Object>();
+                data.put("reports", entries);
+                data.put("timestamp", new Date());
+                catalogTemplate.render(writer, data);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to create the catalog file: " + catalogFile, e);
+            }
+        }
+        return reportFiles;
+    }
+
+    private Map<String, Object> newCatalogEntry(JsonObject json, File indexFile, File reportFile) {
+        Map<String, Object> entry = new HashMap<String, Object>();
+        entry.put("report", reportFile.getName());
+        entry.put("indexFile", indexFile.toPath().toString());
+        List<String> versions = new ArrayList<String>();
+        Set<String> artifacts = new TreeSet<String>();
+        if (json.has(VERSION)) {
+            entry.put("type", "Index");
+            versions.add(json.get(VERSION).getAsString());
+            artifacts.add(json.get(ARTIFACT).getAsString());
+        } else {
+            entry.put("type", json.has(MATRIX) ? "Matrix" : "Diff");
+            for (JsonElement index : json.getAsJsonArray(INDEXES)) {
+                versions.add(index.getAsJsonObject().get(VERSION).getAsString());
+                artifacts.add(index.getAsJsonObject().get(ARTIFACT).getAsString());
+            }
+        }
+        entry.put("versions", versions);
+        entry.put("artifacts", artifacts);
+        entry.put("total", json.has(TOTAL) ? json.get(TOTAL).getAsInt() : null);
+        return entry;
+    }
+
+    private Mustache getMustache(String name) {
+        Mustache mustache = engine.getMustache(name);
+        if (mustache == null) {
+            throw new IllegalStateException("Template not found: " + name);
+        }
+        return mustache;
+    }
+
+    /**
+     * Renders a sharded report - an overview page and one page per range of IDs. The index or diff file is read as a stream and only the entries of
+     * the current page are held in memory. The entries with the same project code and ID are never split into two pages and a page of a diff,
+     * which is sorted by project code, never spans more than one project code. Every ID has a stable anchor - the project code followed by the ID.
+     *
+     * <p>
+     * The overview page is named after the index file, see also {@link #getDefaultReportFile(File)}, the pages have the page number appended.
+     * </p>
      *
      * @param indexFile
-     * @param reportFile
+     * @param outputDirectory
+     * @param pageSize the maximum number of entries per page, a larger page is only rendered for a group of entries with the same ID
+     * @return the overview file
      */
-    public void createReportFile(File indexFile, File reportFile) {
-        try (Writer writer = Files.newBufferedWriter(initReportFile(indexFile, reportFile).toPath(), Charset.forName("UTF-8"))) {
-            generate(indexFile, writer);
+    public File createShardedReport(File indexFile, File outputDirectory, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be greater than zero: " + pageSize);
+        }
+        if (!indexFile.exists() || !indexFile.canRead()) {
+            throw new IllegalArgumentException("Unable to read the index file: " + indexFile);
+        }
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IllegalStateException("Unable to create the output directory: " + outputDirectory);
+        }
+        String name = getDefaultReportFile(indexFile).getName();
+        File overviewFile = new File(outputDirectory, name);
+        JsonObject header = new JsonObject();
+        List<Map<String, Object>> pages = new ArrayList<Map<String, Object>>();
+
+        try (JsonReader reader = Json.openJsonReader(indexFile)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String member = reader.nextName();
+                if (MATRIX.equals(member)) {
+                    throw new IllegalStateException("Sharded reports are not supported for version matrix files: " + indexFile);
+                }
+                if ((MESSAGES.equals(member) || DIFFERENCES.equals(member)) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    boolean diff = DIFFERENCES.equals(member);
+                    Pager pager = new Pager(diff ? diffPageTemplate : indexPageTemplate, header, indexFile, outputDirectory,
+                            name.substring(0, name.length() - 5), overviewFile.getName(), pageSize, diff);
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        pager.add(Streams.parse(reader).getAsJsonObject());
+                    }
+                    reader.endArray();
+                    pager.finish();
+                    pages = pager.pages;
+                } else {
+                    header.add(member, Streams.parse(reader));
+                }
+            }
+            reader.endObject();
         } catch (IOException e) {
-            throw new IllegalStateException("Unable to create the report file: " + reportFile, e);
+            throw new IllegalStateException("Unable to parse the index file: " + indexFile, e);
+        }
+
+        Map<String, Object> data = new HashMap<String, Object>();
+        if (header.has(VERSION)) {
+            data.put("title", "Index - " + header.get(VERSION).getAsString());
+        } else if (header.has(INDEXES)) {
+            data.put("title", "Index Diff");
+        } else {
+            throw new IllegalStateException("Unsupported index file format: " + indexFile);
+        }
+        data.put("json", header);
+        data.put("pages", pages);
+        data.put("pageCount", pages.size());
+        data.put("indexFile", indexFile.toPath().toString());
+        data.put("timestamp", new Date());
+        try (Writer writer = Files.newBufferedWriter(overviewFile.toPath(), Charset.forName("UTF-8"))) {
+            overviewTemplate.render(writer, data);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create the report file: " + overviewFile, e);
+        }
+        return overviewFile;
+    }
+
+    /**
+     * Renders a lightweight report - a single self-contained file with the index or diff data embedded as compact JSON. An inline script renders
+     * only the visible rows and filters them by ID, level or interface on the client.
+     *
+     * <p>
+     * The equal messages of a difference are embedded only once - every difference has the {@value Strings#VALUES} array of distinct messages and the
+     * {@value Strings#VALUE} of a version message is the position in this array. The fingerprints written by older versions of the tools are not
+     * embedded.
+     * </p>
+     *
+     * @param indexFile
+     * @param writer
+     */
+    public void generateLite(File indexFile, Writer writer) {
+        if (!indexFile.exists() || !indexFile.canRead()) {
+            throw new IllegalArgumentException("Unable to read the index file: " + indexFile);
+        }
+        StringWriter json = new StringWriter();
+        try (JsonReader reader = Json.openJsonReader(indexFile); JsonWriter jsonWriter = new JsonWriter(json)) {
+            // The JSON is embedded in a script element
+            jsonWriter.setHtmlSafe(true);
+            boolean supported = false;
+            reader.beginObject();
+            jsonWriter.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (MATRIX.equals(name)) {
+                    throw new IllegalStateException("Lightweight reports are not supported for version matrix files: " + indexFile);
+                }
+                supported |= VERSION.equals(name) || INDEXES.equals(name);
+                jsonWriter.name(name);
+                if ((MESSAGES.equals(name) || DIFFERENCES.equals(name)) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    jsonWriter.beginArray();
+                    while (reader.hasNext()) {
+                        JsonObject entry = Streams.parse(reader).getAsJsonObject();
+                        if (MESSAGES.equals(name)) {
+                            entry.remove(FINGERPRINT);
+                        } else {
+                            compactDifference(entry);
+                        }
+                        Json.writeJsonElement(entry, jsonWriter);
+                    }
+                    reader.endArray();
+                    jsonWriter.endArray();
+                } else {
+                    Json.copyJsonValue(reader, jsonWriter);
+                }
+            }
+            reader.endObject();
+            jsonWriter.endObject();
+            if (!supported) {
+                throw new IllegalStateException("Unsupported index file format: " + indexFile);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to parse the index file: " + indexFile, e);
+        }
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("data", json.toString());
+        data.put("timestamp", new Date());
+        liteTemplate.render(writer, data);
+    }
+
+    /**
+     *
+     * @param indexFile
+     * @param reportFile if <code>null</code> the report is written to the directory of the index file, the name is derived from the index file name
+     */
+    public void createLiteReportFile(final File indexFile, File reportFile) {
+        if (reportFile == null) {
+            String name = getDefaultReportFile(indexFile).getName();
+            reportFile = new File(indexFile.getAbsoluteFile().getParentFile(), name.substring(0, name.length() - 5) + "-lite.html");
         }
+        writeReportFile(reportFile, new ReportRenderer<Void>() {
+            @Override
+            public Void render(Writer writer) {
+                generateLite(indexFile, writer);
+                return null;
+            }
+        });
+    }
+
+    private static void compactDifference(JsonObject difference) {
+        Map<JsonElement, Integer> positions = new HashMap<JsonElement, Integer>();
+        JsonArray values = new JsonArray();
+        for (JsonElement element : difference.getAsJsonArray(MESSAGES)) {
+            JsonObject message = element.getAsJsonObject();
+            JsonElement value = message.get(VALUE);
+            if (value.isJsonObject()) {
+                value.getAsJsonObject().remove(FINGERPRINT);
+            }
+            Integer position = positions.get(value);
+            if (position == null) {
+                position = values.size();
+                positions.put(value, position);
+                values.add(value);
+            }
+            message.addProperty(VALUE, position);
+        }
+        difference.add(VALUES, values);
+    }
+
+    /**
+     *
+     * @param indexFile
+     * @param reportFile
+     */
+    public void createReportFile(final File indexFile, File reportFile) {
+        writeReportFile(reportFile != null ? reportFile : getDefaultReportFile(indexFile), new ReportRenderer<Void>() {
+            @Override
+            public Void render(Writer writer) {
+                generate(indexFile, writer);
+                return null;
+            }
+        });
     }
 
     /**
@@ -135,25 +655,175 @@ public class LogMessageReport {
      * @return the default output file -
      */
     File getDefaultReportFile(File indexFile) {
-        String filename = indexFile.getName().substring(0, indexFile.getName().lastIndexOf(".json"));
+        String filename = indexFile.getName();
+        int suffixIdx = filename.lastIndexOf('.');
+        if (suffixIdx > 0) {
+            filename = filename.substring(0, suffixIdx);
+        }
         return new File(indexFile.getParentFile(), filename + ".html");
     }
 
-    private File initReportFile(File indexFile, File reportFile) {
-        if (reportFile == null) {
-            reportFile = getDefaultReportFile(indexFile);
+    /**
+     * The report is rendered to a temporary file which only replaces the report file if the rendering succeeds, i.e. no empty or partial report is
+     * left behind.
+     *
+     * @param reportFile
+     * @param renderer
+     * @return the result of the renderer
+     */
+    private <T> T writeReportFile(File reportFile, ReportRenderer<T> renderer) {
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(reportFile.getAbsoluteFile().getParentFile().toPath(), reportFile.getName(), ".tmp");
+            T result;
+            try (Writer writer = Files.newBufferedWriter(tempFile, Charset.forName("UTF-8"))) {
+                result = renderer.render(writer);
+            }
+            Files.move(tempFile, reportFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return result;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create the report file: " + reportFile, e);
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException ignored) {
+                    // The temporary file is only left behind
+                }
+            }
         }
-        if (!reportFile.exists()) {
-            try {
-                reportFile.createNewFile();
-            } catch (IOException e) {
-                throw new IllegalStateException("Unable to create the report file: " + reportFile);
+    }
+
+    /**
+     * Only reads the beginning of the file.
+     *
+     * @param file
+     * @return <code>true</code> if the given JSON file is an index, a diff or a matrix file
+     */
+    static boolean isReportInput(File file) {
+        try (JsonReader reader = Json.openJsonReader(file)) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return false;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (VERSION.equals(name) || INDEXES.equals(name) || MATRIX.equals(name)) {
+                    return true;
+                }
+                reader.skipValue();
+            }
+            return false;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private interface ReportRenderer<T> {
+
+        T render(Writer writer);
+
+    }
+
+    /**
+     * Collects the entries of the current page and renders the page as soon as the first entry of the next page is added.
+     */
+    private static final class Pager {
+
+        private final Mustache template;
+
+        private final JsonObject header;
+
+        private final File indexFile;
+
+        private final File outputDirectory;
+
+        private final String baseName;
+
+        private final String overview;
+
+        private final int pageSize;
+
+        private final boolean splitByProjectCode;
+
+        private final List<Map<String, Object>> pages;
+
+        private final List<Map<String, Object>> entries;
+
+        private String projectCode;
+
+        private String label;
+
+        private int position;
+
+        Pager(Mustache template, JsonObject header, File indexFile, File outputDirectory, String baseName, String overview, int pageSize,
+                boolean splitByProjectCode) {
+            this.template = template;
+            this.header = header;
+            this.indexFile = indexFile;
+            this.outputDirectory = outputDirectory;
+            this.baseName = baseName;
+            this.overview = overview;
+            this.pageSize = pageSize;
+            this.splitByProjectCode = splitByProjectCode;
+            this.pages = new ArrayList<Map<String, Object>>();
+            this.entries = new ArrayList<Map<String, Object>>();
+        }
+
+        void add(JsonObject value) throws IOException {
+            String entryProjectCode = value.has(PROJECT_CODE) ? value.get(PROJECT_CODE).getAsString() : "";
+            JsonObject ids = value.has(ID) ? value : value.getAsJsonObject(MESSAGE);
+            String entryLabel = entryProjectCode + ids.get(ID).getAsString();
+            boolean sameId = entryLabel.equals(label);
+            if (!entries.isEmpty() && !sameId && (entries.size() >= pageSize || (splitByProjectCode && !entryProjectCode.equals(projectCode)))) {
+                render(getPageFile(pages.size() + 2).getName());
             }
+            Map<String, Object> entry = new HashMap<String, Object>();
+            entry.put("value", value);
+            entry.put("position", ++position);
+            // Only the first entry with the given ID is anchored
+            entry.put("anchor", sameId ? null : entryLabel);
+            entries.add(entry);
+            projectCode = entryProjectCode;
+            label = entryLabel;
         }
-        if (!reportFile.canWrite()) {
-            throw new IllegalStateException("Unable to write to the report file: " + reportFile);
+
+        void finish() throws IOException {
+            if (!entries.isEmpty()) {
+                render(null);
+            }
+        }
+
+        private void render(String next) throws IOException {
+            int number = pages.size() + 1;
+            File pageFile = getPageFile(number);
+            Map<String, Object> page = new HashMap<String, Object>();
+            page.put("number", number);
+            page.put("file", pageFile.getName());
+            page.put("first", entries.get(0).get("anchor"));
+            page.put("last", label);
+            page.put("count", entries.size());
+
+            Map<String, Object> data = new HashMap<String, Object>();
+            data.put("json", header);
+            data.put("page", page);
+            data.put("entries", entries);
+            data.put("overview", overview);
+            data.put("previous", number > 1 ? getPageFile(number - 1).getName() : null);
+            data.put("next", next);
+            data.put("indexFile", indexFile.toPath().toString());
+            data.put("timestamp", new Date());
+            try (Writer writer = Files.newBufferedWriter(pageFile.toPath(), Charset.forName("UTF-8"))) {
+                template.render(writer, data);
+            }
+            pages.add(page);
+            entries.clear();
         }
-        return reportFile;
+
+        private File getPageFile(int number) {
+            return new File(outputDirectory, baseName + "-" + number + ".html");
+        }
+
     }
 
 }
@@ -0,0 +1,611 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import static org.jboss.weld.logging.Strings.ARTIFACT;
+import static org.jboss.weld.logging.Strings.DESCRIPTION;
+import static org.jboss.weld.logging.Strings.FORMAT;
+import static org.jboss.weld.logging.Strings.ID;
+import static org.jboss.weld.logging.Strings.INTERFACE;
+import static org.jboss.weld.logging.Strings.LEVEL;
+import static org.jboss.weld.logging.Strings.LOGGING_CLASS;
+import static org.jboss.weld.logging.Strings.LOG_MESSAGE;
+import static org.jboss.weld.logging.Strings.MESSAGE;
+import static org.jboss.weld.logging.Strings.MESSAGES;
+import static org.jboss.weld.logging.Strings.METHOD_INFO;
+import static org.jboss.weld.logging.Strings.PROJECT_CODE;
+import static org.jboss.weld.logging.Strings.RETURN_TYPE;
+import static org.jboss.weld.logging.Strings.SIGNATURE;
+import static org.jboss.weld.logging.Strings.SUPPRESSIONS;
+import static org.jboss.weld.logging.Strings.TOTAL;
+import static org.jboss.weld.logging.Strings.VALUE;
+import static org.jboss.weld.logging.Strings.VERSION;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a JSON index file directly from the memory-mapped UTF-8 bytes. Member names are matched without creating strings and the values are decoded
+ * into a reusable buffer - strings are only created for the values which are retained and were not seen before, see also {@link StringPool}. If
+ * descriptions are not retained only the hash is computed.
+ *
+ * <p>
+ * Besides the standard JSON, the most common lenient constructs accepted by {@link com.google.gson.JsonParser} are supported, i.e. unquoted names and
+ * values, single-quoted strings and comments. {@link UnsupportedSyntaxException} is thrown for any other syntax.
+ * </p>
+ *
+ * @author Martin Kouba
+ */
+final class MappedIndexReader {
+
+    private static final int CACHE_SIZE = 1024;
+
+    private final ByteBuffer buffer;
+
+    private final int limit;
+
+    private int position;
+
+    // The last name or value decoded
+    private char[] chars = new char[256];
+
+    private int length;
+
+    private boolean isNull;
+
+    private final StringPool pool;
+
+    // Direct-mapped cache of the pooled strings, avoids creating a string for a value which was already seen in this file
+    private final String[] cache;
+
+    private MappedIndexReader(ByteBuffer buffer, StringPool pool) {
+        this.buffer = buffer;
+        this.pool = pool;
+        this.cache = new String[CACHE_SIZE];
+        this.limit = buffer.limit();
+        // Skip the UTF-8 byte order mark
+        if (limit >= 3 && (buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB && (buffer.get(2) & 0xFF) == 0xBF) {
+            position = 3;
+        }
+    }
+
+    /**
+     *
+     * @param indexFile
+     * @param retainDescriptions
+     * @param pool the pool used for all the string values
+     * @return the index read from the given file
+     * @throws UnsupportedSyntaxException if the file contains a construct which is not supported
+     * @throws IOException
+     */
+    static Index read(File indexFile, boolean retainDescriptions, StringPool pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new UnsupportedSyntaxException("File too large to be mapped: " + indexFile);
+            }
+            MappedIndexReader reader = new MappedIndexReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), pool);
+            return reader.readIndex(indexFile.toPath().toString(), retainDescriptions);
+        }
+    }
+
+    private Index readIndex(String filePath, boolean retainDescriptions) throws IOException {
+        String version = null;
+        String artifact = null;
+        Integer total = null;
+        List<LogMessage> messages = new ArrayList<LogMessage>();
+        beginObject();
+        while (hasNext()) {
+            nextName();
+            if (nameEquals(VERSION)) {
+                version = nextString();
+            } else if (nameEquals(ARTIFACT)) {
+                artifact = nextString();
+            } else if (nameEquals(TOTAL)) {
+                total = nextInteger();
+            } else if (nameEquals(MESSAGES)) {
+                beginArray();
+                while (hasNext()) {
+                    messages.add(readMessage(retainDescriptions));
+                }
+                endArray();
+            } else {
+                skipValue();
+            }
+        }
+        endObject();
+        // Version and artifact must be always set
+        if (version == null || artifact == null) {
+            throw new IllegalStateException("Version and artifact must be set: " + filePath);
+        }
+        return new Index(version, artifact, total != null ? total : messages.size(), filePath, messages);
+    }
+
+    private LogMessage readMessage(boolean retainDescription) throws IOException {
+        String projectCode = null;
+        String signature = null;
+        String returnType = null;
+        String interfaceName = null;
+        boolean logMessage = false;
+        String level = null;
+        String loggingClass = null;
+        Integer id = null;
+        String value = null;
+        String format = null;
+        List<String> suppressions = null;
+        String description = null;
+        long descriptionHash = LogMessage.NO_DESCRIPTION_HASH;
+        beginObject();
+        while (hasNext()) {
+            nextName();
+            if (nameEquals(PROJECT_CODE)) {
+                projectCode = nextString();
+            } else if (nameEquals(METHOD_INFO)) {
+                if (!isObjectNext()) {
+                    skipValue();
+                    continue;
+                }
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    if (nameEquals(SIGNATURE)) {
+                        signature = nextString();
+                    } else if (nameEquals(RETURN_TYPE)) {
+                        returnType = nextString();
+                    } else if (nameEquals(INTERFACE)) {
+                        interfaceName = nextString();
+                    } else {
+                        skipValue();
+                    }
+                }
+                endObject();
+            } else if (nameEquals(LOG_MESSAGE)) {
+                if (!isObjectNext()) {
+                    skipValue();
+                    continue;
+                }
+                logMessage = true;
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    if (nameEquals(LEVEL)) {
+                        level = nextString();
+                    } else if (nameEquals(LOGGING_CLASS)) {
+                        loggingClass = nextString();
+                    } else {
+                        skipValue();
+                    }
+                }
+                endObject();
+            } else if (nameEquals(MESSAGE)) {
+                if (!isObjectNext()) {
+                    skipValue();
+                    continue;
+                }
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    if (nameEquals(ID)) {
+                        id = nextInteger();
+                    } else if (nameEquals(VALUE)) {
+                        value = nextString();
+                    } else if (nameEquals(FORMAT)) {
+                        format = nextString();
+                    } else {
+                        skipValue();
+                    }
+                }
+                endObject();
+            } else if (nameEquals(SUPPRESSIONS)) {
+                if (peek() != '[') {
+                    skipValue();
+                    continue;
+                }
+                suppressions = new ArrayList<String>();
+                beginArray();
+                while (hasNext()) {
+                    suppressions.add(nextString());
+                }
+                endArray();
+            } else if (nameEquals(DESCRIPTION)) {
+                nextValue();
+                if (isNull) {
+                    descriptionHash = LogMessage.NO_DESCRIPTION_HASH;
+                    description = null;
+                } else {
+                    descriptionHash = LogMessage.hash(chars, 0, length);
+                    description = retainDescription ? toPooledString() : null;
+                }
+            } else {
+                skipValue();
+            }
+        }
+        endObject();
+        return new LogMessage(projectCode, signature, returnType, interfaceName, logMessage, level, loggingClass, id, value, format, suppressions,
+                description, descriptionHash);
+    }
+
+    private boolean isObjectNext() throws IOException {
+        return peek() == '{';
+    }
+
+    private void beginObject() throws IOException {
+        expect('{');
+    }
+
+    private void endObject() throws IOException {
+        expect('}');
+        skipComma();
+    }
+
+    private void beginArray() throws IOException {
+        expect('[');
+    }
+
+    private void endArray() throws IOException {
+        expect(']');
+        skipComma();
+    }
+
+    /**
+     *
+     * @return <code>true</code> if the current object or array has more elements
+     * @throws IOException
+     */
+    private boolean hasNext() throws IOException {
+        int next = peek();
+        return next != '}' && next != ']';
+    }
+
+    private void nextName() throws IOException {
+        decode();
+        if (peek() != ':') {
+            throw unsupported("Name separator expected");
+        }
+        position++;
+    }
+
+    /**
+     *
+     * @param name
+     * @return <code>true</code> if the last name or value decoded is equal to the given string
+     */
+    private boolean nameEquals(String name) {
+        if (length != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void nextValue() throws IOException {
+        int next = peek();
+        if (next == '{' || next == '[') {
+            throw unsupported("Primitive value expected");
+        }
+        decode();
+        skipComma();
+    }
+
+    /**
+     *
+     * @return the next primitive value as a pooled string or <code>null</code>
+     * @throws IOException
+     */
+    private String nextString() throws IOException {
+        nextValue();
+        return isNull ? null : toPooledString();
+    }
+
+    private String toPooledString() {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String cached = cache[slot];
+        if (cached != null && cached.length() == length && cached.hashCode() == hash && nameEquals(cached)) {
+            return cached;
+        }
+        String pooled = pool.intern(new String(chars, 0, length));
+        cache[slot] = pooled;
+        return pooled;
+    }
+
+    private Integer nextInteger() throws IOException {
+        nextValue();
+        if (isNull) {
+            return null;
+        }
+        boolean negative = length > 0 && chars[0] == '-';
+        int start = negative ? 1 : 0;
+        if (length == start || length - start > 9) {
+            throw unsupported("Integer expected");
+        }
+        int result = 0;
+        for (int i = start; i < length; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                // E.g. 1.0 or a string value
+                throw unsupported("Integer expected");
+            }
+            result = result * 10 + (c - '0');
+        }
+        return negative ? -result : result;
+    }
+
+    private void skipValue() throws IOException {
+        int next = peek();
+        if (next == '{' || next == '[') {
+            int depth = 0;
+            do {
+                next = peek();
+                if (next == '{' || next == '[') {
+                    depth++;
+                    position++;
+                } else if (next == '}' || next == ']') {
+                    depth--;
+                    position++;
+                } else if (next == ',' || next == ':') {
+                    position++;
+                } else if (next == '"' || next == '\'') {
+                    skipString((byte) next);
+                } else {
+                    skipLiteral();
+                }
+            } while (depth > 0);
+            skipComma();
+        } else {
+            if (next == '"' || next == '\'') {
+                skipString((byte) next);
+            } else {
+                skipLiteral();
+            }
+            skipComma();
+        }
+    }
+
+    private void skipString(byte quote) throws IOException {
+        position++;
+        while (position < limit) {
+            byte b = buffer.get(position++);
+            if (b == quote) {
+                return;
+            }
+            if (b == '\\') {
+                position++;
+            }
+        }
+        throw unsupported("Unterminated string");
+    }
+
+    private void skipLiteral() throws IOException {
+        int start = position;
+        while (position < limit && !isLiteralEnd(buffer.get(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw unsupported("Value expected");
+        }
+    }
+
+    /**
+     * Decodes the next string or literal into the buffer.
+     *
+     * @throws IOException
+     */
+    private void decode() throws IOException {
+        int next = peek();
+        length = 0;
+        isNull = false;
+        if (next == '"' || next == '\'') {
+            decodeString((byte) next);
+        } else {
+            int start = position;
+            while (position < limit && !isLiteralEnd(buffer.get(position))) {
+                append((char) (buffer.get(position++) & 0xFF));
+            }
+            if (start == position) {
+                throw unsupported("Value expected");
+            }
+            isNull = length == 4 && chars[0] == 'n' && chars[1] == 'u' && chars[2] == 'l' && chars[3] == 'l';
+        }
+    }
+
+    private void decodeString(byte quote) throws IOException {
+        position++;
+        while (position < limit) {
+            int b = buffer.get(position++);
+            if (b == quote) {
+                return;
+            }
+            if (b >= 0) {
+                if (b == '\\') {
+                    decodeEscape();
+                } else {
+                    append((char) b);
+                }
+            } else if ((b & 0xE0) == 0xC0) {
+                append((char) (((b & 0x1F) << 6) | continuation()));
+            } else if ((b & 0xF0) == 0xE0) {
+                append((char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation()));
+            } else if ((b & 0xF8) == 0xF0) {
+                int codePoint = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+                append(Character.highSurrogate(codePoint));
+                append(Character.lowSurrogate(codePoint));
+            } else {
+                throw unsupported("Malformed UTF-8");
+            }
+        }
+        throw unsupported("Unterminated string");
+    }
+
+    private int continuation() throws IOException {
+        if (position >= limit) {
+            throw unsupported("Malformed UTF-8");
+        }
+        int b = buffer.get(position++);
+        if ((b & 0xC0) != 0x80) {
+            throw unsupported("Malformed UTF-8");
+        }
+        return b & 0x3F;
+    }
+
+    private void decodeEscape() throws IOException {
+        if (position >= limit) {
+            throw unsupported("Unterminated escape sequence");
+        }
+        char escaped = (char) buffer.get(position++);
+        switch (escaped) {
+            case 'u':
+                if (position + 4 > limit) {
+                    throw unsupported("Unterminated escape sequence");
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit((char) buffer.get(position++), 16);
+                    if (digit < 0) {
+                        throw unsupported("Malformed escape sequence");
+                    }
+                    value = (value << 4) | digit;
+                }
+                append((char) value);
+                break;
+            case 't':
+                append('\t');
+                break;
+            case 'b':
+                append('\b');
+                break;
+            case 'n':
+                append('\n');
+                break;
+            case 'r':
+                append('\r');
+                break;
+            case 'f':
+                append('\f');
+                break;
+            default:
+                // E.g. \" or \\
+                append(escaped);
+                break;
+        }
+    }
+
+    private void append(char c) {
+        if (length == chars.length) {
+            chars = Arrays.copyOf(chars, length * 2);
+        }
+        chars[length++] = c;
+    }
+
+    private void expect(char c) throws IOException {
+        if (peek() != c) {
+            throw unsupported("'" + c + "' expected");
+        }
+        position++;
+    }
+
+    private void skipComma() throws IOException {
+        if (peek() == ',') {
+            position++;
+        }
+    }
+
+    /**
+     * Skips the whitespace and comments.
+     *
+     * @return the next byte or -1 if there are no more bytes
+     * @throws IOException
+     */
+    private int peek() throws IOException {
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                position++;
+            } else if (b == '#' || (b == '/' && position + 1 < limit && buffer.get(position + 1) == '/')) {
+                while (position < limit && buffer.get(position) != '\n') {
+                    position++;
+                }
+            } else if (b == '/' && position + 1 < limit && buffer.get(position + 1) == '*') {
+                position += 2;
+                while (position + 1 < limit && !(buffer.get(position) == '*' && buffer.get(position + 1) == '/')) {
+                    position++;
+                }
+                position += 2;
+            } else {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isLiteralEnd(byte b) {
+        switch (b) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+            case ',':
+            case ':':
+            case '{':
+            case '}':
+            case '[':
+            case ']':
+            case '"':
+            case '\'':
+            case '#':
+            case '/':
+            case ';':
+            case '=':
+            case '\\':
+                return true;
+            default:
+                // Non-ASCII literals are not supported
+                return b < 0;
+        }
+    }
+
+    private UnsupportedSyntaxException unsupported(String message) {
+        return new UnsupportedSyntaxException(message + " at position " + position);
+    }
+
+    /**
+     * The index file contains a construct which is not supported by this reader.
+     */
+    static final class UnsupportedSyntaxException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedSyntaxException(String message) {
+            super(message);
+        }
+
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Messages of a single project code organized by message ID and version.
+ *
+ * <p>
+ * The IDs are stored in a sorted primitive array. The messages are stored in a single array sorted by ID, version and original order. For every ID
+ * there is a dense block of version slots, the slot {@code v} of the ID at position {@code i} holds the messages of the version {@code v} in the range
+ * {@code [getStart(i, v), getEnd(i, v))}.
+ * </p>
+ *
+ * @author Martin Kouba
+ */
+final class MessageTable {
+
+    private final String projectCode;
+
+    private final int versionCount;
+
+    private final int[] ids;
+
+    // Length is ids.length * versionCount + 1
+    private final int[] slotStarts;
+
+    private final LogMessage[] messages;
+
+    // The index and the position in the index of every message
+    private final int[] sources;
+
+    private MessageTable(String projectCode, int versionCount, int[] ids, int[] slotStarts, LogMessage[] messages, int[] sources) {
+        this.projectCode = projectCode;
+        this.versionCount = versionCount;
+        this.ids = ids;
+        this.slotStarts = slotStarts;
+        this.messages = messages;
+        this.sources = sources;
+    }
+
+    String getProjectCode() {
+        return projectCode;
+    }
+
+    int getVersionCount() {
+        return versionCount;
+    }
+
+    /**
+     *
+     * @return the number of distinct IDs
+     */
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     *
+     * @param idx
+     * @return the ID at the given position
+     */
+    int getId(int idx) {
+        return ids[idx];
+    }
+
+    int getStart(int idx, int version) {
+        return slotStarts[idx * versionCount + version];
+    }
+
+    int getEnd(int idx, int version) {
+        return slotStarts[idx * versionCount + version + 1];
+    }
+
+    LogMessage getMessage(int position) {
+        return messages[position];
+    }
+
+    /**
+     *
+     * @param position
+     * @return the number of the index the message at the given position comes from
+     */
+    int getIndex(int position) {
+        return sources[position * 2];
+    }
+
+    /**
+     *
+     * @param position
+     * @return the position of the message in the original index
+     */
+    int getPosition(int position) {
+        return sources[position * 2 + 1];
+    }
+
+    /**
+     *
+     * @param idx
+     * @return the number of versions which contain at least one message with the ID at the given position
+     */
+    int getVersionsFound(int idx) {
+        int found = 0;
+        for (int version = 0; version < versionCount; version++) {
+            if (getEnd(idx, version) > getStart(idx, version)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     *
+     * @param indexes
+     * @param versionSlots the version slot of every index
+     * @param versionCount
+     * @return the map of project codes to tables, ordered by project code
+     */
+    static Map<String, MessageTable> build(List<Index> indexes, int[] versionSlots, int versionCount) {
+        Map<String, Builder> builders = new TreeMap<String, Builder>();
+        for (int i = 0; i < indexes.size(); i++) {
+            List<LogMessage> messages = indexes.get(i).getMessages();
+            for (int j = 0; j < messages.size(); j++) {
+                LogMessage message = messages.get(j);
+                Builder builder = builders.get(message.getProjectCode());
+                if (builder == null) {
+                    builder = new Builder(message.getProjectCode(), versionCount);
+                    builders.put(message.getProjectCode(), builder);
+                }
+                builder.add(message, versionSlots[i], i, j);
+            }
+        }
+        Map<String, MessageTable> tables = new TreeMap<String, MessageTable>();
+        for (Builder builder : builders.values()) {
+            tables.put(builder.projectCode, builder.build());
+        }
+        return tables;
+    }
+
+    /**
+     * Builds the table of a single project code.
+     */
+    static final class Builder {
+
+        private final String projectCode;
+
+        private final int versionCount;
+
+        private long[] keys = new long[64];
+
+        private int[] versions = new int[64];
+
+        private LogMessage[] messages = new LogMessage[64];
+
+        private int[] sources = new int[128];
+
+        private int size;
+
+        Builder(String projectCode, int versionCount) {
+            this.projectCode = projectCode;
+            this.versionCount = versionCount;
+        }
+
+        /**
+         * Messages must be added in the order of version slots.
+         *
+         * @param message
+         * @param version
+         * @param index
+         * @param position
+         */
+        void add(LogMessage message, int version, int index, int position) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                versions = Arrays.copyOf(versions, size * 2);
+                messages = Arrays.copyOf(messages, size * 2);
+                sources = Arrays.copyOf(sources, size * 4);
+            }
+            sources[size * 2] = index;
+            sources[size * 2 + 1] = position;
+            // Sort key - the ID in the upper half, the insertion order in the lower half
+            keys[size] = ((long) message.getId() << 32) | size;
+            versions[size] = version;
+            messages[size] = message;
+            size++;
+        }
+
+        MessageTable build() {
+            long[] sortedKeys = Arrays.copyOf(keys, size);
+            Arrays.sort(sortedKeys);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (i == 0 || (int) (sortedKeys[i] >> 32) != (int) (sortedKeys[i - 1] >> 32)) {
+                    distinct++;
+                }
+            }
+            int[] ids = new int[distinct];
+            int[] slotStarts = new int[distinct * versionCount + 1];
+            LogMessage[] sortedMessages = new LogMessage[size];
+            int[] sortedSources = new int[size * 2];
+            int idx = -1;
+            for (int i = 0; i < size; i++) {
+                int id = (int) (sortedKeys[i] >> 32);
+                if (idx < 0 || ids[idx] != id) {
+                    ids[++idx] = id;
+                }
+                int position = (int) sortedKeys[i];
+                sortedMessages[i] = messages[position];
+                sortedSources[i * 2] = sources[position * 2];
+                sortedSources[i * 2 + 1] = sources[position * 2 + 1];
+                // Count the messages in the slot first
+                slotStarts[idx * versionCount + versions[position] + 1]++;
+            }
+            for (int i = 1; i < slotStarts.length; i++) {
+                slotStarts[i] += slotStarts[i - 1];
+            }
+            return new MessageTable(projectCode, versionCount, ids, slotStarts, sortedMessages, sortedSources);
+        }
+
+    }
+
+}
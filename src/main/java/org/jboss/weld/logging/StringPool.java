@@ -0,0 +1,61 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe pool of strings shared by all the index files loaded together. The same interface names, levels, project codes, signatures etc.
+ * are repeated in every version - each distinct value is only held once.
+ *
+ * <p>
+ * Unlike {@link String#intern()} the pooled strings are released together with the pool.
+ * </p>
+ *
+ * @author Martin Kouba
+ */
+final class StringPool {
+
+    private final ConcurrentMap<String, String> strings;
+
+    StringPool() {
+        this.strings = new ConcurrentHashMap<String, String>();
+    }
+
+    /**
+     *
+     * @param value
+     * @return the pooled string equal to the given value, or <code>null</code> if the value is <code>null</code>
+     */
+    String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = strings.putIfAbsent(value, value);
+        return pooled != null ? pooled : value;
+    }
+
+    /**
+     *
+     * @return the number of distinct strings
+     */
+    int size() {
+        return strings.size();
+    }
+
+}
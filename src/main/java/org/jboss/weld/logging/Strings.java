@@ -42,9 +42,18 @@ final class Strings {
     static final String DESCRIPTION = "desc";
     static final String DIFFERENCES = "differences";
     static final String COLLISIONS = "collisions";
+    static final String VERSION_COLLISIONS = "versionCollisions";
     static final String FILE_PATH = "filePath";
     static final String INDEXES = "indexes";
     static final String DETECT_COLLISIONS_ONLY = "detectCollisionsOnly";
+    static final String HASH = "hash";
+    static final String FINGERPRINT = "fingerprint";
+    static final String MATRIX = "matrix";
+    static final String CLASSES = "classes";
+    static final String SLOTS = "slots";
+    static final String ARTIFACTS = "artifacts";
+    static final String DIFF_FILE = "diffFile";
+    static final String VALUES = "values";
 
     static final String SUPPRESSIONS = "suppressions";
     static final String SUPPRESS_WARNINGS_PREFIX = "weldlog:";
@@ -63,6 +72,8 @@ final class Strings {
     static final String OPT_PROJECT_VERSION = "projectVersion";
     static final String OPT_ARTIFACT = "artifact";
     static final String OPT_OUTPUT_FILE = "outputFile";
+    static final String OPT_FRAGMENTS_DIR = "fragmentsDir";
+    static final String OPT_BINARY_INDEX = "binaryIndex";
     static final String UNKNOWN = "UNKNOWN";
 
 }
@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import static org.jboss.weld.logging.Strings.CLASSES;
+import static org.jboss.weld.logging.Strings.ID;
+import static org.jboss.weld.logging.Strings.MESSAGES;
+import static org.jboss.weld.logging.Strings.PROJECT_CODE;
+import static org.jboss.weld.logging.Strings.SLOTS;
+import static org.jboss.weld.logging.Strings.VERSIONS;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * The versions of a single ID grouped into equivalence classes - two versions belong to the same class if the messages with the ID are equal. The
+ * messages of every pair of versions are equal if and only if both versions belong to the same class.
+ *
+ * @author Martin Kouba
+ */
+final class VersionClasses {
+
+    private final MessageTable table;
+
+    private final int idx;
+
+    // The class of every version slot, starting with 1, 0 if the ID is not found in the version
+    private final int[] slots;
+
+    // The first version slot of every class
+    private final int[] representatives;
+
+    VersionClasses(MessageTable table, int idx, int[] slots, int[] representatives) {
+        this.table = table;
+        this.idx = idx;
+        this.slots = slots;
+        this.representatives = representatives;
+    }
+
+    MessageTable getTable() {
+        return table;
+    }
+
+    int getIdx() {
+        return idx;
+    }
+
+    int getClassCount() {
+        return representatives.length;
+    }
+
+    /**
+     *
+     * @param cls the class, starting with 1
+     * @return the first version slot of the given class
+     */
+    int getRepresentative(int cls) {
+        return representatives[cls - 1];
+    }
+
+    /**
+     *
+     * @param version
+     * @return the class of the given version slot, starting with 1, or 0 if the ID is not found in the version
+     */
+    int getClass(int version) {
+        return slots[version];
+    }
+
+    /**
+     *
+     * @return <code>true</code> if the ID is found in all the versions and the messages are equal
+     */
+    boolean isUniform() {
+        if (representatives.length != 1) {
+            return false;
+        }
+        for (int slot : slots) {
+            if (slot == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the JSON representation - the class of every version and the messages of every class.
+     *
+     * @param writer
+     * @param versions
+     * @param descriptions the descriptions which were not retained
+     * @throws IOException
+     */
+    void write(JsonWriter writer, List<String> versions, Map<LogMessage, String> descriptions) throws IOException {
+        writer.beginObject();
+        writer.name(PROJECT_CODE).value(table.getProjectCode());
+        writer.name(ID).value(table.getId(idx));
+        writer.name(SLOTS).beginArray();
+        for (int slot : slots) {
+            if (slot == 0) {
+                writer.nullValue();
+            } else {
+                writer.value(slot);
+            }
+        }
+        writer.endArray();
+        writer.name(CLASSES).beginArray();
+        for (int cls = 1; cls <= representatives.length; cls++) {
+            writer.beginObject();
+            writer.name(VERSIONS).beginArray();
+            for (int version = 0; version < slots.length; version++) {
+                if (slots[version] == cls) {
+                    writer.value(versions.get(version));
+                }
+            }
+            writer.endArray();
+            writer.name(MESSAGES).beginArray();
+            int representative = getRepresentative(cls);
+            for (int i = table.getStart(idx, representative); i < table.getEnd(idx, representative); i++) {
+                LogMessage message = table.getMessage(i);
+                message.write(writer, descriptions.get(message));
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+}
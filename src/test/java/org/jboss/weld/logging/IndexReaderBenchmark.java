@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the JSON tree, the {@link com.google.gson.stream.JsonReader} and the memory-mapped way of reading index files. This is not a test - run
+ * it manually with a directory of index files as the first argument, optionally followed by the number of rounds.
+ *
+ * @author Martin Kouba
+ */
+public class IndexReaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        List<File> files = new ArrayList<File>();
+        for (File file : new File(args[0]).listFiles()) {
+            if (file.getName().endsWith(".json")) {
+                files.add(file);
+            }
+        }
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            int tree = 0;
+            for (File file : files) {
+                tree += Index.fromJson(Json.readJsonElementFromFile(file).getAsJsonObject(), file.getPath()).getMessages().size();
+            }
+            long treeTime = System.nanoTime() - start;
+            System.out.printf("Round %s: tree %s ms, reader %s ms, reader without descriptions %s ms, mapped %s ms, mapped without descriptions %s ms [%s messages]%n",
+                    i + 1, treeTime / 1000000, time(files, false, true), time(files, false, false), time(files, true, true), time(files, true, false), tree);
+        }
+    }
+
+    private static long time(List<File> files, boolean mapped, boolean retainDescriptions) throws IOException {
+        long start = System.nanoTime();
+        for (File file : files) {
+            if (mapped) {
+                MappedIndexReader.read(file, retainDescriptions, new StringPool());
+            } else {
+                Index.readJson(file, retainDescriptions, new StringPool());
+            }
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+}
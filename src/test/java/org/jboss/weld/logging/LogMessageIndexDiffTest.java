@@ -19,19 +19,33 @@ package org.jboss.weld.logging;
 import static org.hamcrest.CoreMatchers.hasItems;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import org.junit.Test;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.ReadContext;
 
@@ -120,6 +134,430 @@ public class LogMessageIndexDiffTest {
         assertThat(ctx.<Integer> read("$.differences[0].id"), is(0));
     }
 
+    @Test
+    public void testCollisionsMultipleMessagesWithTheSameId() {
+        ReadContext ctx = getReadContext(true, new File("src/test/resources/test_diff_04.json"), new File("src/test/resources/test_diff_05.json"));
+        assertThat(ctx.<Integer> read("$.total"), is(1));
+        assertThat(ctx.<Integer> read("$.differences[0].id"), is(0));
+        // message2() is paired with message2(), i.e. the signature does not collide
+        List<String> collisions = ctx.read("$.differences[0].collisions");
+        assertEquals(1, collisions.size());
+        assertEquals("msg-value", collisions.get(0));
+        List<String> versions = ctx.read("$.differences[0].versionCollisions[0].versions");
+        assertEquals(2, versions.size());
+        assertThat(versions, hasItems("3.0.4.Final", "3.0.5.Final"));
+    }
+
+    @Test
+    public void testBinaryIndex() throws IOException {
+        File binaryFile = new File("target/test_diff_02" + BinaryIndex.FILE_SUFFIX);
+        BinaryIndex.write(Index.read(new File("src/test/resources/test_diff_02.json")), binaryFile);
+        assertTrue(BinaryIndex.isBinaryIndex(binaryFile));
+        assertFalse(BinaryIndex.isBinaryIndex(new File("src/test/resources/test_diff_02.json")));
+        assertEquals(Index.read(new File("src/test/resources/test_diff_02.json")).getMessages(), Index.read(binaryFile).getMessages());
+        ReadContext ctx = getReadContext(false, new File("src/test/resources/test_diff_01.json"), binaryFile);
+        assertThat(ctx.<Integer> read("$.total"), is(1));
+        assertThat(ctx.<Integer> read("$.differences[0].id"), is(600));
+    }
+
+    @Test
+    public void testIndexDirectoryWithBinaryIndex() throws IOException {
+        File directory = new File("target/test_binary_dir_01");
+        if (directory.exists()) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+        }
+        directory.mkdirs();
+        // The generator writes both formats next to each other
+        File json = new File(directory, "log-msg-idx_3.0.0-SNAPSHOT.json");
+        Files.copy(new File("src/test/resources/test_diff_01.json").toPath(), json.toPath());
+        File binary = new File(directory, "log-msg-idx_3.0.0-SNAPSHOT" + BinaryIndex.FILE_SUFFIX);
+        BinaryIndex.write(Index.read(json), binary);
+        File other = new File(directory, "log-msg-idx_2.2.10.Final.json");
+        Files.copy(new File("src/test/resources/test_diff_02.json").toPath(), other.toPath());
+        List<File> files = LogMessageIndexDiff.listIndexFiles(directory);
+        Collections.sort(files);
+        assertEquals(Arrays.asList(other, binary), files);
+        List<File> expected = new ArrayList<File>();
+        Collections.addAll(expected, json, other);
+        LogMessageIndexDiff diff = new LogMessageIndexDiff();
+        assertEquals(diff.generate(expected, false).get(Strings.DIFFERENCES), diff.generate(files, false).get(Strings.DIFFERENCES));
+    }
+
+    @Test
+    public void testParallelismDoesNotAffectResult() {
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, new File("src/test/resources/test_diff_02.json"), new File("src/test/resources/test_diff_01.json"),
+                new File("src/test/resources/test_coll_03.json"));
+        Collections.addAll(files, new File("src/test/resources/test_diff_04.json"), new File("src/test/resources/test_diff_05.json"));
+        String serial = new LogMessageIndexDiff(1).generate(files, false).toString();
+        String serialCollisions = new LogMessageIndexDiff(1).generate(files, true).toString();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(serial, new LogMessageIndexDiff(3).generate(files, false).toString());
+            assertEquals(serialCollisions, new LogMessageIndexDiff(3).generate(files, true).toString());
+        }
+    }
+
+    @Test
+    public void testExternalMemoryMode() throws IOException {
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, new File("src/test/resources/test_diff_04.json"), new File("src/test/resources/test_diff_02.json"),
+                new File("src/test/resources/test_coll_03.json"), new File("src/test/resources/test_diff_05.json"),
+                new File("src/test/resources/test_diff_01.json"));
+        files.add(addDescription(new File("src/test/resources/test_diff_03.json"), new File("target/test_desc_03.json"), "Foo"));
+        for (boolean detectCollisionsOnly : new boolean[] { false, true }) {
+            String expected = new LogMessageIndexDiff(1).generate(files, detectCollisionsOnly).toString();
+            // Every message is spilled to a separate run, the runs are merged in several passes
+            assertEquals(expected, new LogMessageIndexDiff(1, true, 1).generate(files, detectCollisionsOnly).toString());
+            // Nothing is spilled
+            assertEquals(expected, new LogMessageIndexDiff(1, true, 64 * 1024 * 1024).generate(files, detectCollisionsOnly).toString());
+        }
+        ExternalMessageSorter sorter = new ExternalMessageSorter(1);
+        try {
+            Index index = Index.read(new File("src/test/resources/test_diff_04.json"));
+            for (int i = 0; i < index.getMessages().size(); i++) {
+                sorter.add(index.getMessages().get(i), 0, i);
+            }
+            assertEquals(index.getMessages().size(), sorter.getRunCount());
+            int count = 0;
+            for (List<ExternalMessageSorter.Entry> group = sorter.nextGroup(); group != null; group = sorter.nextGroup()) {
+                for (ExternalMessageSorter.Entry entry : group) {
+                    assertEquals(index.getMessages().get(entry.getPosition()), entry.getMessage());
+                    assertEquals(group.get(0).getMessage().getId(), entry.getMessage().getId());
+                    count++;
+                }
+            }
+            assertEquals(index.getMessages().size(), count);
+        } finally {
+            sorter.close();
+        }
+    }
+
+    @Test
+    public void testHistoryStore() throws IOException {
+        File storeDirectory = new File("target/test_history_01");
+        if (storeDirectory.exists()) {
+            for (File file : storeDirectory.listFiles()) {
+                file.delete();
+            }
+        }
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, new File("src/test/resources/test_diff_02.json"), new File("src/test/resources/test_diff_01.json"),
+                new File("src/test/resources/test_coll_03.json"), new File("src/test/resources/test_diff_04.json"),
+                new File("src/test/resources/test_diff_05.json"));
+        files.add(2, addDescription(new File("src/test/resources/test_diff_03.json"), new File("target/test_desc_04.json"), "Foo"));
+        LogMessageIndexDiff diff = new LogMessageIndexDiff(1);
+        // Append the versions one by one
+        diff.appendToHistory(storeDirectory, files.subList(0, 1));
+        for (int i = 2; i <= files.size(); i++) {
+            diff.appendToHistory(storeDirectory, files.subList(i - 1, i));
+            for (boolean detectCollisionsOnly : new boolean[] { false, true }) {
+                assertEquals(diff.generate(files.subList(0, i), detectCollisionsOnly), generateFromHistory(diff, storeDirectory, detectCollisionsOnly));
+            }
+        }
+        try {
+            diff.appendToHistory(storeDirectory, files.subList(0, 1));
+            fail("An older version must not be appended");
+        } catch (IllegalStateException expected) {
+        }
+        // An incomplete batch is discarded
+        File logFile = new File(storeDirectory, HistoryStore.LOG_FILE_NAME);
+        long length = logFile.length();
+        Files.write(logFile.toPath(), new byte[] { 0, 0, 1, 0, 42 }, StandardOpenOption.APPEND);
+        assertEquals(diff.generate(files, true), generateFromHistory(diff, storeDirectory, true));
+        assertEquals(length, logFile.length());
+    }
+
+    @Test
+    public void testHistoryStoreVersionOrder() throws IOException {
+        File storeDirectory = new File("target/test_history_03");
+        if (storeDirectory.exists()) {
+            for (File file : storeDirectory.listFiles()) {
+                file.delete();
+            }
+        }
+        // The string order of the versions is different: 2.4.10.Final, 2.4.11.Final, 2.4.9.Final
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, setVersion(new File("src/test/resources/test_diff_02.json"), new File("target/test_order_01.json"), "2.4.9.Final"),
+                setVersion(new File("src/test/resources/test_diff_01.json"), new File("target/test_order_02.json"), "2.4.10.Final"),
+                setVersion(new File("src/test/resources/test_diff_03.json"), new File("target/test_order_03.json"), "2.4.11.Final"));
+        LogMessageIndexDiff diff = new LogMessageIndexDiff(1);
+        diff.appendToHistory(storeDirectory, files);
+        for (boolean detectCollisionsOnly : new boolean[] { false, true }) {
+            assertEquals(diff.generate(files, detectCollisionsOnly), generateFromHistory(diff, storeDirectory, detectCollisionsOnly));
+        }
+    }
+
+    @Test
+    public void testHistoryStoreAppendOrder() throws IOException {
+        File storeDirectory = new File("target/test_history_02");
+        if (storeDirectory.exists()) {
+            for (File file : storeDirectory.listFiles()) {
+                file.delete();
+            }
+        }
+        assertTrue(HistoryStore.VERSION_COMPARATOR.compare("2.4.9.Final", "2.4.10.Final") < 0);
+        assertTrue(HistoryStore.VERSION_COMPARATOR.compare("3.0.0-SNAPSHOT", "3.0.1.Final") < 0);
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, setVersion(new File("src/test/resources/test_diff_02.json"), new File("target/test_version_01.json"), "2.4.9.Final"),
+                setVersion(new File("src/test/resources/test_diff_01.json"), new File("target/test_version_02.json"), "2.4.10.Final"),
+                setVersion(new File("src/test/resources/test_diff_03.json"), new File("target/test_version_03.json"), "2.4.11.Final"));
+        LogMessageIndexDiff diff = new LogMessageIndexDiff(1);
+        diff.appendToHistory(storeDirectory, files.subList(0, 1));
+        // Opened before another process appends a version
+        HistoryStore stale = HistoryStore.open(storeDirectory);
+        diff.appendToHistory(storeDirectory, files.subList(1, 2));
+        final int[] slot = new int[1];
+        stale.append(Collections.singletonList(Index.readMetadata(files.get(2))), new HistoryStore.StateBuilder() {
+            @Override
+            public List<HistoryStore.State> build(int newSlot) {
+                slot[0] = newSlot;
+                return Collections.emptyList();
+            }
+        });
+        assertEquals(2, slot[0]);
+        assertEquals(Arrays.asList("2.4.9.Final", "2.4.10.Final", "2.4.11.Final"), HistoryStore.open(storeDirectory).getVersions());
+    }
+
+    private File setVersion(File indexFile, File outputFile, String version) throws IOException {
+        JsonObject index = Json.readJsonElementFromFile(indexFile).getAsJsonObject();
+        index.addProperty(Strings.VERSION, version);
+        outputFile.getParentFile().mkdirs();
+        Json.writeJsonElementToFile(index, outputFile);
+        return outputFile;
+    }
+
+    private JsonElement generateFromHistory(LogMessageIndexDiff diff, File storeDirectory, boolean detectCollisionsOnly) throws IOException {
+        StringWriter writer = new StringWriter();
+        diff.generateFromHistory(storeDirectory, detectCollisionsOnly, new JsonWriter(writer));
+        return new JsonParser().parse(writer.toString());
+    }
+
+    @Test
+    public void testDiffCache() throws IOException {
+        assertTrue(DiffCache.isSupported());
+        File cacheDirectory = new File("target/test_cache_01");
+        if (cacheDirectory.exists()) {
+            for (File file : cacheDirectory.listFiles()) {
+                file.delete();
+            }
+        }
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, new File("src/test/resources/test_diff_01.json"),
+                addDescription(new File("src/test/resources/test_diff_02.json"), new File("target/test_cache_02.json"), "Foo"));
+        LogMessageIndexDiff diff = new LogMessageIndexDiff(1);
+        LogMessageIndexDiff cached = new LogMessageIndexDiff(1, true, 0, cacheDirectory, DiffCache.DEFAULT_MAX_SIZE);
+        JsonObject expected = diff.generate(files, false);
+        assertEquals(expected, cached.generate(files, false));
+        // Hit
+        assertEquals(expected, cached.generate(files, false));
+        File outputFile = new File("target/test_cache_03.json");
+        cached.createDiffFile(outputFile, files, false);
+        assertEquals(expected, Json.readJsonElementFromFile(outputFile));
+        assertEquals(diff.generate(files, true), cached.generate(files, true));
+        File[] entries = cacheDirectory.listFiles();
+        assertEquals(2, entries.length);
+        // A corrupted entry is discarded
+        for (File entry : entries) {
+            byte[] bytes = Files.readAllBytes(entry.toPath());
+            bytes[bytes.length / 2] = (byte) (bytes[bytes.length / 2] == 'x' ? 'y' : 'x');
+            Files.write(entry.toPath(), bytes);
+        }
+        assertEquals(expected, cached.generate(files, false));
+        // A modified index file results in a different key
+        addDescription(new File("src/test/resources/test_diff_02.json"), files.get(1), "Bar");
+        expected = diff.generate(files, false);
+        assertEquals(expected, cached.generate(files, false));
+        ReadContext ctx = JsonPath.parse(expected.toString());
+        List<String> descriptions = ctx.read("$.differences[0].messages[?(@.version == '2.2.10.Final')].value.desc");
+        assertEquals(Collections.singletonList("Bar"), descriptions);
+        assertEquals(3, cacheDirectory.listFiles().length);
+        // The least recently used entries are evicted
+        cached = new LogMessageIndexDiff(1, true, 0, cacheDirectory, 1);
+        assertEquals(diff.generate(files, true), cached.generate(files, true));
+        assertEquals(1, cacheDirectory.listFiles().length);
+        assertEquals(diff.generate(files, true), cached.generate(files, true));
+    }
+
+    @Test
+    public void testVersionMatrix() throws IOException {
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, new File("src/test/resources/test_diff_02.json"), new File("src/test/resources/test_diff_01.json"),
+                new File("src/test/resources/test_diff_03.json"), new File("src/test/resources/test_diff_04.json"),
+                new File("src/test/resources/test_diff_05.json"), new File("src/test/resources/test_coll_03.json"));
+        LogMessageIndexDiff diff = new LogMessageIndexDiff(1);
+        JsonObject matrix = diff.generateMatrix(files);
+        assertEquals(matrix, new LogMessageIndexDiff(4, false).generateMatrix(files));
+        ReadContext ctx = JsonPath.parse(matrix.toString());
+        List<String> versions = ctx.read("$.versions");
+        assertEquals(files.size(), versions.size());
+        // Every pair of versions must match the diff of the pair
+        for (int i = 0; i < files.size(); i++) {
+            for (int j = i + 1; j < files.size(); j++) {
+                List<File> pair = new ArrayList<File>();
+                Collections.addAll(pair, files.get(i), files.get(j));
+                ReadContext pairCtx = JsonPath.parse(diff.generate(pair, false).toString());
+                List<Integer> expected = pairCtx.read("$.differences[*].id");
+                List<Integer> actual = new ArrayList<Integer>();
+                List<Integer> ids = ctx.read("$.matrix[*].id");
+                int first = versions.indexOf((String) pairCtx.read("$.indexes[0].version"));
+                int second = versions.indexOf((String) pairCtx.read("$.indexes[1].version"));
+                for (int k = 0; k < ids.size(); k++) {
+                    List<Integer> slots = ctx.read("$.matrix[" + k + "].slots");
+                    if (!Objects.equals(slots.get(first), slots.get(second))) {
+                        actual.add(ids.get(k));
+                    }
+                }
+                assertEquals(new ArrayList<Integer>(expected), actual);
+            }
+        }
+        ctx = JsonPath.parse(diff.generateMatrix(files.subList(1, 3)).toString());
+        assertEquals(Integer.valueOf(0), ctx.read("$.total"));
+    }
+
+    @Test
+    public void testVersionMatrixSuppressions() throws IOException {
+        // The first version suppresses the message value, the other two differ in the value only
+        File first = setVersion(new File("src/test/resources/test_coll_03.json"), new File("target/test_matrix_01.json"), "2.9.0-SNAPSHOT");
+        File second = new File("src/test/resources/test_coll_01.json");
+        JsonObject index = Json.readJsonElementFromFile(second).getAsJsonObject();
+        index.addProperty(Strings.VERSION, "3.0.3-SNAPSHOT");
+        index.getAsJsonArray(Strings.MESSAGES).get(0).getAsJsonObject().getAsJsonObject(Strings.MESSAGE).addProperty(Strings.VALUE, "Foo");
+        File third = new File("target/test_matrix_02.json");
+        Json.writeJsonElementToFile(index, third);
+        LogMessageIndexDiff diff = new LogMessageIndexDiff(1);
+        assertThat(getReadContext(false, second, third).<Integer> read("$.total"), is(1));
+        assertThat(getReadContext(false, first, second).<Integer> read("$.total"), is(0));
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, first, second, third);
+        ReadContext ctx = JsonPath.parse(diff.generateMatrix(files).toString());
+        assertEquals(Arrays.asList("2.9.0-SNAPSHOT", "3.0.0-SNAPSHOT", "3.0.3-SNAPSHOT"), new ArrayList<String>(ctx.<List<String>> read("$.versions")));
+        List<Integer> slots = ctx.read("$.matrix[0].slots");
+        // The second version joins the class of the first one but the third version must not, even though it is equal to the first version
+        assertEquals(slots.get(0), slots.get(1));
+        assertNotEquals(slots.get(1), slots.get(2));
+    }
+
+    @Test
+    public void testBatchDiff() throws IOException {
+        List<File> core = new ArrayList<File>();
+        Collections.addAll(core, new File("src/test/resources/test_diff_01.json"), new File("src/test/resources/test_diff_02.json"),
+                new File("src/test/resources/test_diff_04.json"));
+        List<File> se = new ArrayList<File>();
+        Collections.addAll(se, setArtifact(new File("src/test/resources/test_coll_01.json"), new File("target/test_batch_01.json"), "org.jboss.weld.se:weld-se"),
+                setArtifact(new File("src/test/resources/test_coll_02.json"), new File("target/test_batch_02.json"), "org.jboss.weld.se:weld-se"));
+        File probe = setArtifact(new File("src/test/resources/test_diff_05.json"), new File("target/test_batch_03.json"), "org.jboss.weld.probe:weld-probe");
+        BinaryIndex.write(Index.read(se.get(1)), new File("target/test_batch_04" + BinaryIndex.FILE_SUFFIX));
+        se.set(1, new File("target/test_batch_04" + BinaryIndex.FILE_SUFFIX));
+        List<File> files = new ArrayList<File>();
+        files.addAll(se);
+        files.add(probe);
+        files.addAll(core);
+        File outputDirectory = new File("target/test_batch_out_01");
+        LogMessageIndexDiff diff = new LogMessageIndexDiff(2);
+        Map<String, File> diffFiles = diff.createDiffFiles(outputDirectory, files, false);
+        assertEquals(2, diffFiles.size());
+        assertEquals(diff.generate(core, false), Json.readJsonElementFromFile(diffFiles.get("org.jboss.weld:weld-core-impl")));
+        assertEquals(diff.generate(se, false), Json.readJsonElementFromFile(diffFiles.get("org.jboss.weld.se:weld-se")));
+        ReadContext ctx = JsonPath.parse(Json.readJsonElementFromFile(new File(outputDirectory, LogMessageIndexDiff.SUMMARY_FILE_NAME)).toString());
+        List<String> artifacts = ctx.read("$.artifacts[*].artifact");
+        assertEquals(Arrays.asList("org.jboss.weld.probe:weld-probe", "org.jboss.weld.se:weld-se", "org.jboss.weld:weld-core-impl"),
+                new ArrayList<String>(artifacts));
+        assertNull(ctx.read("$.artifacts[0].diffFile"));
+        assertEquals("diff-org.jboss.weld.se_weld-se.json", ctx.read("$.artifacts[1].diffFile"));
+        assertEquals(ctx.read("$.artifacts[1].total", Integer.class), JsonPath.parse(diffFiles.get("org.jboss.weld.se:weld-se")).read("$.total", Integer.class));
+        List<String> versions = ctx.read("$.artifacts[2].versions");
+        assertEquals(Arrays.asList("2.2.10.Final", "3.0.0-SNAPSHOT", "3.0.4.Final"), new ArrayList<String>(versions));
+    }
+
+    private File setArtifact(File indexFile, File outputFile, String artifact) throws IOException {
+        JsonObject index = Json.readJsonElementFromFile(indexFile).getAsJsonObject();
+        index.addProperty(Strings.ARTIFACT, artifact);
+        outputFile.getParentFile().mkdirs();
+        Json.writeJsonElementToFile(index, outputFile);
+        return outputFile;
+    }
+
+    @Test
+    public void testStreamingOutput() throws IOException {
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, new File("src/test/resources/test_diff_04.json"), new File("src/test/resources/test_diff_05.json"),
+                new File("src/test/resources/test_diff_01.json"));
+        LogMessageIndexDiff diff = new LogMessageIndexDiff();
+        for (boolean detectCollisionsOnly : new boolean[] { false, true }) {
+            StringWriter writer = new StringWriter();
+            diff.generate(files, detectCollisionsOnly, new JsonWriter(writer));
+            assertEquals(diff.generate(files, detectCollisionsOnly), new JsonParser().parse(writer.toString()));
+        }
+    }
+
+    @Test
+    public void testDescriptionsNotRetained() throws IOException {
+        List<File> files = new ArrayList<File>();
+        files.add(addDescription(new File("src/test/resources/test_diff_01.json"), new File("target/test_desc_01.json"), "Foo <b>bar</b>"));
+        files.add(addDescription(new File("src/test/resources/test_diff_02.json"), new File("target/test_desc_02.json"), "Baz"));
+        for (boolean detectCollisionsOnly : new boolean[] { false, true }) {
+            assertEquals(new LogMessageIndexDiff(1, true).generate(files, detectCollisionsOnly),
+                    new LogMessageIndexDiff(1, false).generate(files, detectCollisionsOnly));
+        }
+        ReadContext ctx = JsonPath.parse(new LogMessageIndexDiff(1, false).generate(files, true).toString());
+        List<String> collisions = ctx.read("$.differences[0].collisions");
+        assertThat(collisions, hasItems("desc", "log-level"));
+        List<String> descriptions = ctx.read("$.differences[0].messages[?(@.version == '3.0.0-SNAPSHOT')].value.desc");
+        assertEquals(Collections.singletonList("Foo <b>bar</b>"), descriptions);
+    }
+
+    @Test
+    public void testMappedIndexReader() throws IOException {
+        File special = addDescription(new File("src/test/resources/test_diff_02.json"), new File("target/test_mapped_01.json"),
+                "\u010Ce\u0161tina \"quoted\" \uD83D\uDE00\n\ttab");
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, new File("src/test/resources").listFiles());
+        files.add(special);
+        for (File file : files) {
+            if (!file.getName().matches("test_(diff|coll|mapped)_\\d+\\.json")) {
+                continue;
+            }
+            for (boolean retainDescriptions : new boolean[] { true, false }) {
+                Index expected = Index.readJson(file, retainDescriptions, new StringPool());
+                Index actual = MappedIndexReader.read(file, retainDescriptions, new StringPool());
+                assertEquals(file.getName(), expected.getVersion(), actual.getVersion());
+                assertEquals(file.getName(), expected.getTotal(), actual.getTotal());
+                assertEquals(file.getName(), expected.getMessages(), actual.getMessages());
+                for (int i = 0; i < expected.getMessages().size(); i++) {
+                    assertEquals(expected.getMessages().get(i).getDescription(), actual.getMessages().get(i).getDescription());
+                    assertEquals(expected.getMessages().get(i).getDescriptionHash(), actual.getMessages().get(i).getDescriptionHash());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStringPool() throws IOException {
+        File binaryFile = new File("target/test_pool_01" + BinaryIndex.FILE_SUFFIX);
+        BinaryIndex.write(Index.read(new File("src/test/resources/test_diff_02.json")), binaryFile);
+        StringPool pool = new StringPool();
+        LogMessage mapped = Index.read(new File("src/test/resources/test_diff_01.json"), true, pool).getMessages().get(0);
+        LogMessage binary = Index.read(binaryFile, true, pool).getMessages().get(0);
+        LogMessage reader = Index.readJson(new File("src/test/resources/test_diff_02.json"), true, pool).getMessages().get(0);
+        for (LogMessage message : new LogMessage[] { binary, reader }) {
+            assertSame(mapped.getProjectCode(), message.getProjectCode());
+            assertSame(mapped.getSignature(), message.getSignature());
+            assertSame(mapped.getInterfaceName(), message.getInterfaceName());
+            assertSame(mapped.getValue(), message.getValue());
+        }
+        assertSame(binary.getLevel(), reader.getLevel());
+    }
+
+    private File addDescription(File indexFile, File outputFile, String description) throws IOException {
+        JsonObject index = Json.readJsonElementFromFile(indexFile).getAsJsonObject();
+        index.getAsJsonArray(Strings.MESSAGES).get(0).getAsJsonObject().addProperty(Strings.DESCRIPTION, description);
+        outputFile.getParentFile().mkdirs();
+        Json.writeJsonElementToFile(index, outputFile);
+        return outputFile;
+    }
+
     ReadContext getReadContext(boolean detectCollisionsOnly, File... indexFiles) {
         LogMessageIndexDiff generator = new LogMessageIndexDiff();
         List<File> files = new ArrayList<File>();
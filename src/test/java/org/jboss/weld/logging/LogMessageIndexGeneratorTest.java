@@ -0,0 +1,132 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Martin Kouba
+ */
+public class LogMessageIndexGeneratorTest {
+
+    private static final String FOO_LOGGER = "package org.jboss.weld.test; import org.jboss.logging.annotations.*; @MessageLogger(projectCode = \"FOO-\") "
+            + "public interface FooLogger { @Message(id = 1, value = \"%s\") String foo(); }";
+
+    private static final String BAR_LOGGER = "package org.jboss.weld.test; import org.jboss.logging.annotations.*; @MessageLogger(projectCode = \"FOO-\") "
+            + "public interface BarLogger { @Message(id = 2, value = \"Bar\") String bar(); }";
+
+    @Test
+    public void testFragments() throws IOException {
+        File baseDir = new File("target/test_generator_01");
+        deleteRecursively(baseDir);
+        File sourceDir = new File(baseDir, "src");
+        File classesDir = new File(baseDir, "classes");
+        File fragmentsDir = new File(baseDir, "fragments");
+        File indexFile = new File(baseDir, "index.json");
+        classesDir.mkdirs();
+        List<File> annotations = new ArrayList<File>();
+        annotations.add(writeSource(sourceDir, "org.jboss.logging.annotations.MessageLogger",
+                "package org.jboss.logging.annotations; public @interface MessageLogger { String projectCode(); }"));
+        annotations.add(writeSource(sourceDir, "org.jboss.logging.annotations.Message",
+                "package org.jboss.logging.annotations; public @interface Message { int id() default 0; String value(); }"));
+        compile(annotations, classesDir, fragmentsDir, indexFile);
+
+        // Both interfaces compiled
+        File fooSource = writeSource(sourceDir, "org.jboss.weld.test.FooLogger", String.format(FOO_LOGGER, "Foo"));
+        File barSource = writeSource(sourceDir, "org.jboss.weld.test.BarLogger", BAR_LOGGER);
+        compile(Arrays.asList(fooSource, barSource), classesDir, fragmentsDir, indexFile);
+        assertEquals(Arrays.asList("Foo", "Bar"), getValues(indexFile));
+        File fooFragment = new File(fragmentsDir, "org.jboss.weld.test.FooLogger.json");
+        File barFragment = new File(fragmentsDir, "org.jboss.weld.test.BarLogger.json");
+        assertTrue(fooFragment.isFile());
+        assertTrue(barFragment.isFile());
+
+        // Only the changed interface is recompiled
+        fooSource = writeSource(sourceDir, "org.jboss.weld.test.FooLogger", String.format(FOO_LOGGER, "Foo changed"));
+        compile(Collections.singletonList(fooSource), classesDir, fragmentsDir, indexFile);
+        assertEquals(Arrays.asList("Foo changed", "Bar"), getValues(indexFile));
+
+        // The fragment of an unchanged interface is not rewritten
+        assertTrue(barFragment.setLastModified(1000));
+        compile(Collections.singletonList(barSource), classesDir, fragmentsDir, indexFile);
+        assertEquals(1000, barFragment.lastModified());
+        assertEquals(Arrays.asList("Foo changed", "Bar"), getValues(indexFile));
+
+        // The fragment of a deleted interface is dropped
+        assertTrue(new File(classesDir, "org/jboss/weld/test/BarLogger.class").delete());
+        compile(Collections.singletonList(fooSource), classesDir, fragmentsDir, indexFile);
+        assertFalse(barFragment.exists());
+        assertEquals(Collections.singletonList("Foo changed"), getValues(indexFile));
+    }
+
+    private void compile(List<File> sources, File classesDir, File fragmentsDir, File indexFile) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull(compiler);
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList("-d", classesDir.getPath(), "-classpath", classesDir.getPath(), "-A" + Strings.OPT_FRAGMENTS_DIR + "="
+                    + fragmentsDir.getPath(), "-A" + Strings.OPT_OUTPUT_FILE + "=" + indexFile.getPath());
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null, fileManager.getJavaFileObjectsFromFiles(sources));
+            task.setProcessors(Collections.singletonList(new LogMessageIndexGenerator()));
+            assertTrue(task.call());
+        }
+    }
+
+    private List<String> getValues(File indexFile) throws IOException {
+        List<String> values = new ArrayList<String>();
+        for (LogMessage message : Index.read(indexFile).getMessages()) {
+            values.add(message.getValue());
+        }
+        return values;
+    }
+
+    private File writeSource(File sourceDir, String className, String source) throws IOException {
+        File sourceFile = new File(sourceDir, className.replace('.', '/') + ".java");
+        sourceFile.getParentFile().mkdirs();
+        Files.write(sourceFile.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        return sourceFile;
+    }
+
+    private void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+}
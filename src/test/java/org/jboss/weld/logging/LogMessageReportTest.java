@@ -17,15 +17,25 @@
 package org.jboss.weld.logging;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.ReadContext;
+
 /**
  *
  * @author Martin Kouba
@@ -71,8 +81,149 @@ public class LogMessageReportTest {
         assertReports(expected, result);
     }
 
+    @Test
+    public void testMultipleReports() throws IOException {
+        List<File> indexFiles = new ArrayList<File>();
+        Collections.addAll(indexFiles, new File("src/test/resources/test_diff_01.json"), new File("src/test/resources/test_diff_result.json"),
+                new File("src/test/resources/test_diff_result_null.json"));
+        List<File> reportFiles = new LogMessageReport().createReportFiles(indexFiles, new File("target/test_reports_01"));
+        assertEquals(new File("target/test_reports_01/test_diff_01.html"), reportFiles.get(0));
+        String[] expected = { "test_index_report_result.html", "test_diff_report_result.html", "test_diff_report_result_null.html" };
+        for (int i = 0; i < expected.length; i++) {
+            assertReports(new String(Files.readAllBytes(new File("src/test/resources/" + expected[i]).toPath()), charset),
+                    new String(Files.readAllBytes(reportFiles.get(i).toPath()), charset));
+        }
+    }
+
+    @Test
+    public void testBatchReports() throws IOException {
+        File inputDirectory = new File("target/test_reports_02");
+        inputDirectory.mkdirs();
+        Files.copy(new File("src/test/resources/test_diff_result.json").toPath(), new File(inputDirectory, "test_diff_01.json").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        List<File> indexFiles = new ArrayList<File>();
+        LogMessageReport.addInputFiles("src/test/resources/test_diff_0[12].json", indexFiles);
+        assertEquals(2, indexFiles.size());
+        indexFiles.add(inputDirectory);
+        File outputDirectory = new File("target/test_reports_03");
+        List<File> reportFiles = new LogMessageReport().createReportFiles(indexFiles, outputDirectory, 3);
+        assertEquals(3, reportFiles.size());
+        assertEquals("test_diff_01-2.html", reportFiles.get(2).getName());
+        assertReports(new String(Files.readAllBytes(new File("src/test/resources/test_diff_report_result.html").toPath()), charset),
+                new String(Files.readAllBytes(reportFiles.get(2).toPath()), charset));
+        String catalog = new String(Files.readAllBytes(new File(outputDirectory, LogMessageReport.CATALOG_FILE_NAME).toPath()), charset);
+        for (File reportFile : reportFiles) {
+            assertTrue(catalog.contains("<a href=\"" + reportFile.getName() + "\">"));
+        }
+        assertTrue(catalog.contains("<td>Diff</td>"));
+    }
+
+    @Test
+    public void testBatchDiffReports() throws IOException {
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, new File("src/test/resources/test_diff_01.json"), new File("src/test/resources/test_diff_02.json"));
+        File diffDirectory = new File("target/test_reports_04");
+        new LogMessageIndexDiff(1).createDiffFiles(diffDirectory, files, false);
+        assertTrue(new File(diffDirectory, LogMessageIndexDiff.SUMMARY_FILE_NAME).exists());
+        File outputDirectory = new File("target/test_reports_05");
+        List<File> reportFiles = new LogMessageReport().createReportFiles(Collections.singletonList(diffDirectory), outputDirectory, 2);
+        // The summary is skipped
+        assertEquals(1, reportFiles.size());
+        assertEquals("diff-org.jboss.weld_weld-core-impl.html", reportFiles.get(0).getName());
+        assertFalse(new File(outputDirectory, "summary.html").exists());
+        assertTrue(new File(outputDirectory, LogMessageReport.CATALOG_FILE_NAME).exists());
+    }
+
+    @Test
+    public void testFailedReportNotCreated() throws IOException {
+        File indexFile = new File("target/test_reports_06.json");
+        Files.write(indexFile.toPath(), "{\"artifacts\":[]}".getBytes(charset));
+        File reportFile = new File("target/test_reports_06.html");
+        Files.deleteIfExists(reportFile.toPath());
+        try {
+            new LogMessageReport().createReportFile(indexFile, reportFile);
+            fail("An unsupported file must not be rendered");
+        } catch (IllegalStateException expected) {
+        }
+        assertFalse(reportFile.exists());
+    }
+
+    @Test
+    public void testMatrixReport() throws IOException {
+        List<File> files = new ArrayList<File>();
+        Collections.addAll(files, new File("src/test/resources/test_diff_01.json"), new File("src/test/resources/test_diff_02.json"),
+                new File("src/test/resources/test_diff_04.json"), new File("src/test/resources/test_diff_05.json"));
+        File matrixFile = new File("target/test_matrix_01.json");
+        new LogMessageIndexDiff(1).createMatrixFile(matrixFile, files);
+        StringWriter writer = new StringWriter();
+        new LogMessageReport().generate(matrixFile, writer);
+        String result = writer.toString();
+        assertTrue(result.contains("Version Matrix"));
+        assertTrue(result.contains("Changed IDs (2)"));
+        assertTrue(result.contains("<a href=\"#WELD-600\">WELD-600</a>"));
+        assertTrue(result.contains("<td class=\"cls-2\">2</td>"));
+    }
+
+    @Test
+    public void testShardedReport() throws IOException {
+        StringBuilder json = new StringBuilder("{\"version\":\"1.0\",\"artifact\":\"org.jboss.weld:weld-core-impl\",\"total\":5,\"messages\":[");
+        int[] ids = { 1, 2, 3, 3, 4 };
+        for (int i = 0; i < ids.length; i++) {
+            json.append(i > 0 ? "," : "").append(String.format(
+                    "{\"projectCode\":\"WELD-\",\"method\":{\"sig\":\"m%s()\",\"retType\":\"void\",\"interface\":\"Foo\"},\"msg\":{\"id\":%s,\"value\":\"Message %s\"}}",
+                    i, ids[i], i));
+        }
+        File indexFile = new File("target/test_sharded.json");
+        Files.write(indexFile.toPath(), json.append("]}").toString().getBytes(charset));
+        File outputDirectory = new File("target/test_sharded_report");
+
+        File overviewFile = new LogMessageReport().createShardedReport(indexFile, outputDirectory, 2);
+        assertEquals(new File(outputDirectory, "test_sharded.html"), overviewFile);
+        String overview = new String(Files.readAllBytes(overviewFile.toPath()), charset);
+        assertTrue(overview.contains("Pages (3)"));
+        assertTrue(overview.contains("<a href=\"test_sharded-2.html#WELD-3\">WELD-3</a>"));
+        // The messages with the same ID are never split
+        String page = new String(Files.readAllBytes(new File(outputDirectory, "test_sharded-2.html").toPath()), charset);
+        assertTrue(page.contains("Messages WELD-3 - WELD-3 (page 2)"));
+        assertEquals(1, page.split("id=\"WELD-3\"", -1).length - 1);
+        assertTrue(page.contains("Message 3"));
+        assertTrue(page.contains("<span class=\"idx\">4.</span>"));
+        assertTrue(page.contains("<a href=\"test_sharded-1.html\">Previous</a>"));
+        assertTrue(page.contains("<a href=\"test_sharded-3.html\">Next</a>"));
+        page = new String(Files.readAllBytes(new File(outputDirectory, "test_sharded-3.html").toPath()), charset);
+        assertTrue(page.contains("id=\"WELD-4\""));
+        assertFalse(page.contains("Next"));
+    }
+
+    @Test
+    public void testLiteReport() throws IOException {
+        LogMessageReport report = new LogMessageReport();
+        StringWriter writer = new StringWriter();
+        report.generateLite(new File("src/test/resources/test_diff_result.json"), writer);
+        ReadContext ctx = JsonPath.parse(getEmbeddedData(writer.toString()));
+        assertEquals(Integer.valueOf(600), ctx.read("$.differences[0].id"));
+        // The messages differ in the log level only
+        assertEquals(2, ctx.read("$.differences[0].values", List.class).size());
+        assertEquals(Integer.valueOf(1), ctx.read("$.differences[0].messages[1].value"));
+        assertEquals("INFO", ctx.read("$.differences[0].values[1].log.level"));
+
+        writer = new StringWriter();
+        report.generateLite(new File("src/test/resources/test_diff_01.json"), writer);
+        String result = writer.toString();
+        // The message is only embedded in the data, not rendered
+        assertEquals(1, result.split("is missing @Retention", -1).length - 1);
+        ctx = JsonPath.parse(getEmbeddedData(result));
+        assertEquals("3.0.0-SNAPSHOT", ctx.read("$.version"));
+        assertEquals(Integer.valueOf(600), ctx.read("$.messages[0].msg.id"));
+    }
+
     private void assertReports(String expected, String result) {
         assertEquals(expected.substring(0, expected.indexOf("Generated")), result.substring(0, result.indexOf("Generated")));
     }
 
+    private String getEmbeddedData(String report) {
+        String start = "<script type=\"application/json\" id=\"data\">";
+        return report.substring(report.indexOf(start) + start.length(), report.indexOf("</script>"));
+    }
+
 }
@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+
+/**
+ *
+ * @author Martin Kouba
+ */
+public class LogMessageTest {
+
+    @Test
+    public void testJsonRoundTrip() throws IOException {
+        LogMessage message = readFirstMessage("src/test/resources/test_coll_03.json");
+        assertEquals("WELD-", message.getProjectCode());
+        assertEquals(600, message.getId());
+        assertEquals("DEBUG", message.getLevel());
+        assertEquals(Collections.singletonList("weldlog:msg-value"), message.getSuppressions());
+        LogMessage copy = LogMessage.fromJson(message.toJson());
+        assertEquals(message, copy);
+        assertEquals(message.hashCode(), copy.hashCode());
+        assertEquals(message.getFingerprint(), copy.getFingerprint());
+        assertEquals(message, LogMessage.read(new JsonReader(new StringReader(message.toString())), true));
+    }
+
+    @Test
+    public void testDescriptionNotRetained() throws IOException {
+        JsonObject json = readFirstMessage("src/test/resources/test_diff_01.json").toJson();
+        json.addProperty(Strings.DESCRIPTION, "Foo");
+        LogMessage message = LogMessage.fromJson(json);
+        LogMessage withoutDescription = LogMessage.read(new JsonReader(new StringReader(json.toString())), false);
+        assertEquals(null, withoutDescription.getDescription());
+        assertTrue(withoutDescription.isDescriptionMissing());
+        assertEquals(message.getDescriptionHash(), withoutDescription.getDescriptionHash());
+        assertTrue(message.contentEquals(withoutDescription));
+    }
+
+    @Test
+    public void testFingerprint() throws IOException {
+        LogMessage message = readFirstMessage("src/test/resources/test_diff_01.json");
+        JsonObject json = message.toJson();
+        // The fingerprint is not written
+        assertFalse(json.has(Strings.FINGERPRINT));
+        assertFalse(message.toString().contains(Strings.FINGERPRINT));
+        // A fingerprint found in an older index is ignored, even if malformed
+        JsonObject changed = message.toJson();
+        changed.getAsJsonObject(Strings.MESSAGE).addProperty(Strings.VALUE, "Foo");
+        for (String fingerprint : new String[] { Long.toHexString(message.getFingerprint()), "ff", "foo" }) {
+            json.addProperty(Strings.FINGERPRINT, fingerprint);
+            assertEquals(message.getFingerprint(), LogMessage.fromJson(json).getFingerprint());
+            assertEquals(message, LogMessage.read(new JsonReader(new StringReader(json.toString())), true));
+            changed.addProperty(Strings.FINGERPRINT, fingerprint);
+            LogMessage copied = LogMessage.fromJson(changed);
+            assertNotEquals(message.getFingerprint(), copied.getFingerprint());
+            assertFalse(message.contentEquals(copied));
+        }
+        // Both the memory-mapped and the lenient reader ignore the member
+        JsonObject index = Json.readJsonElementFromFile(new File("src/test/resources/test_diff_01.json")).getAsJsonObject();
+        index.getAsJsonArray(Strings.MESSAGES).set(0, json);
+        File indexFile = new File("target/test_fingerprint_01.json");
+        Json.writeJsonElementToFile(index, indexFile);
+        assertEquals(message, Index.read(indexFile).getMessages().get(0));
+        assertEquals(message, Index.readJson(indexFile, true, new StringPool()).getMessages().get(0));
+        json.remove(Strings.FINGERPRINT);
+        // Description does not affect the fingerprint
+        json.addProperty(Strings.DESCRIPTION, "Foo");
+        assertEquals(message.getFingerprint(), LogMessage.fromJson(json).getFingerprint());
+        // Log level does
+        json.getAsJsonObject(Strings.LOG_MESSAGE).addProperty(Strings.LEVEL, "INFO");
+        assertNotEquals(message.getFingerprint(), LogMessage.fromJson(json).getFingerprint());
+        // Absent and empty members are distinguished
+        json.getAsJsonObject(Strings.LOG_MESSAGE).remove(Strings.LEVEL);
+        LogMessage noLevel = LogMessage.fromJson(json);
+        json.remove(Strings.LOG_MESSAGE);
+        assertNotEquals(noLevel.getFingerprint(), LogMessage.fromJson(json).getFingerprint());
+    }
+
+    @Test
+    public void testSuppressionMask() throws IOException {
+        LogMessage message = readFirstMessage("src/test/resources/test_coll_01.json");
+        JsonObject json = message.toJson();
+        json.getAsJsonObject(Strings.MESSAGE).addProperty(Strings.VALUE, "Foo");
+        LogMessage other = LogMessage.fromJson(json);
+        assertFalse(message.contentEquals(other));
+        int mask = LogMessage.toSuppressionMask(Collections.singletonList("weldlog:msg-value"));
+        assertEquals(LogMessage.SUPPRESS_VALUE, mask);
+        assertTrue(message.contentEquals(other, mask));
+        assertTrue(message.contentEquals(other, LogMessage.toSuppressionMask(Collections.singletonList("weldlog:msg"))));
+        assertFalse(message.contentEquals(other, LogMessage.toSuppressionMask(Collections.singletonList("weldlog:msg-format"))));
+        // Completely suppressed members are treated as absent
+        assertTrue(message.hasMessage());
+        assertFalse(message.hasMessage(LogMessage.toSuppressionMask(Collections.singletonList("weldlog:msg"))));
+        assertEquals(0, LogMessage.toSuppressionMask(Collections.singletonList("msg-value")));
+    }
+
+    private LogMessage readFirstMessage(String path) throws IOException {
+        return Index.fromJson(Json.readJsonElementFromFile(new File(path)).getAsJsonObject(), path).getMessages().get(0);
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2015, Red Hat, Inc., and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.weld.logging;
+
+import static org.jboss.weld.logging.Strings.INDEXES;
+import static org.jboss.weld.logging.Strings.MATRIX;
+import static org.jboss.weld.logging.Strings.VERSION;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.trimou.Mustache;
+import org.trimou.engine.MustacheEngine;
+import org.trimou.engine.MustacheEngineBuilder;
+import org.trimou.engine.config.EngineConfigurationKey;
+import org.trimou.engine.locator.ClassPathTemplateLocator;
+import org.trimou.engine.resolver.MapResolver;
+import org.trimou.engine.resolver.ReflectionResolver;
+import org.trimou.engine.resolver.Resolver;
+import org.trimou.engine.resolver.ThisResolver;
+import org.trimou.gson.converter.GsonValueConverter;
+import org.trimou.gson.resolver.JsonElementResolver;
+import org.trimou.handlebars.HelpersBuilder;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Compares the rendering of a report with the generic Gson and reflection resolvers and with {@link JsonResolver}. This is not a test - run it
+ * manually with an index or diff file as the first argument, optionally followed by the number of warmup and measured iterations.
+ *
+ * @author Martin Kouba
+ */
+public class ReportRenderingBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        File indexFile = new File(args[0]);
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+        JsonObject json = Json.readJsonElementFromFile(indexFile).getAsJsonObject();
+        String template = json.has(VERSION) ? LogMessageReport.INDEX_TEMPLATE
+                : json.has(MATRIX) ? LogMessageReport.MATRIX_TEMPLATE : json.has(INDEXES) ? LogMessageReport.DIFF_TEMPLATE : null;
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("json", json);
+        data.put("indexFile", indexFile.toPath().toString());
+        data.put("timestamp", new Date());
+
+        Mustache generic = buildEngine(new JsonElementResolver(), new ReflectionResolver()).getMustache(template);
+        Mustache typed = buildEngine(new JsonResolver()).getMustache(template);
+
+        for (int i = 0; i < warmup; i++) {
+            System.out.printf("Warmup %s: generic %.2f ms/op, typed %.2f ms/op%n", i + 1, time(generic, data), time(typed, data));
+        }
+        double genericTotal = 0;
+        double typedTotal = 0;
+        for (int i = 0; i < iterations; i++) {
+            double genericTime = time(generic, data);
+            double typedTime = time(typed, data);
+            genericTotal += genericTime;
+            typedTotal += typedTime;
+            System.out.printf("Iteration %s: generic %.2f ms/op, typed %.2f ms/op%n", i + 1, genericTime, typedTime);
+        }
+        System.out.printf("Average: generic %.2f ms/op, typed %.2f ms/op [%s iterations]%n", genericTotal / iterations, typedTotal / iterations,
+                iterations);
+    }
+
+    private static MustacheEngine buildEngine(Resolver... resolvers) {
+        MustacheEngineBuilder builder = MustacheEngineBuilder.newBuilder().omitServiceLoaderConfigurationExtensions()
+                .setProperty(EngineConfigurationKey.PRECOMPILE_ALL_TEMPLATES, false)
+                .addTemplateLocator(ClassPathTemplateLocator.builder(1).setRootPath("templates").build()).addResolver(new ThisResolver())
+                .addResolver(new MapResolver());
+        for (Resolver resolver : resolvers) {
+            builder.addResolver(resolver);
+        }
+        return builder.registerHelpers(HelpersBuilder.all().build()).addValueConverter(new GsonValueConverter()).build();
+    }
+
+    private static double time(Mustache mustache, Map<String, Object> data) {
+        long start = System.nanoTime();
+        mustache.render(new StringWriter(), data);
+        return (System.nanoTime() - start) / 1000000.0;
+    }
+
+}